@@ -0,0 +1,81 @@
+package streambot;
+
+/**
+ * 
+ * precompiled announcement format for one flavor
+ * the colored labels are built once, so formatting an announcement is
+ * a single StringBuilder pass. immutable, safe to share between threads.
+ */
+
+public class AnnouncementTemplate {
+
+    private String labelColor = "";
+    private String infoColor = "";
+    private String separator = "";
+
+    private String onlineHeader = "";
+    private String statusHeader = "";
+    private String titleLabel = "";
+    private String gameLabel = "";
+    private String urlLabel = "";
+    private String offlineLabel = "";
+
+    public AnnouncementTemplate(String flavor, String separator) {
+        //flavor is "<color>word <color>word", strip the words to get the colors
+
+        String[] colors = flavor.replaceAll("[a-z]", "").split(" ");
+        this.labelColor = colors[0];
+        this.infoColor = colors[1];
+        this.separator = separator;
+
+        onlineHeader = separator + label("Online:");
+        statusHeader = separator + label("Status update:");
+        titleLabel = " " + separator + label("Title:");
+        gameLabel = " " + separator + label("Game:");
+        urlLabel = " " + separator + labelColor + " ";
+        offlineLabel = infoColor + " went offline. " + separator;
+    }
+
+    private String label(String label) {
+        return labelColor + " " + label + infoColor + " ";
+    }
+
+    public String format(StreamEvent stream) {
+        switch (stream.getType()) {
+        case OFFLINE:
+            return formatOffline(stream);
+        case STATUS_CHANGED:
+            return formatOnline(statusHeader, stream);
+        default:
+            return formatOnline(onlineHeader, stream);
+        }
+    }
+
+    private String formatOffline(StreamEvent stream) {
+        return new StringBuilder(64)
+                .append(separator).append(' ').append(labelColor)
+                .append(stream.getName())
+                .append(offlineLabel)
+                .toString();
+    }
+
+    private String formatOnline(String header, StreamEvent stream) {
+        return new StringBuilder(128 + stream.getStatus().length())
+                .append(header).append(stream.getName())
+                .append(titleLabel).append(stream.getStatus())
+                .append(gameLabel).append(stream.getGame())
+                .append(urlLabel).append(stream.getUrl())
+                .append(' ').append(separator)
+                .toString();
+    }
+
+    public StringBuilder startDigest(String header) {
+        return new StringBuilder(256)
+                .append(separator).append(' ').append(labelColor).append(' ')
+                .append(header).append(infoColor);
+    }
+
+    public String getSeparator() {
+        return separator;
+    }
+}
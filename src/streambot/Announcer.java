@@ -1,10 +1,12 @@
 package streambot;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Announcer {
 
-    private static Announcer announcer;
+    private static final Announcer announcer = new Announcer();
 
     private final static String[] FLAVORS = {
         "11icy 10mint",
@@ -19,102 +21,172 @@ public class Announcer {
         "14eggplant 15parmesan",
         "no colors"};
 
-    private String labelColor = "";
-    private String infoColor = "";
-    private String separator = "14--";
+    private final static String SEPARATOR = "14--";
 
-    private boolean randomize = false;
-    private boolean announceOffline = true;
+    //one precompiled template per flavor, same index as FLAVORS
+    private final static AnnouncementTemplate[] TEMPLATES = new AnnouncementTemplate[FLAVORS.length];
+    static {
+        for (int i=0; i<FLAVORS.length; i++) {
+            TEMPLATES[i] = new AnnouncementTemplate(FLAVORS[i], SEPARATOR);
+        }
+    }
+
+    //irc lines are limited to 512 bytes including the trailing \r\n,
+    //and the server prepends our ":nick!user@host " when relaying
+    private static final int MAX_LINE_BYTES = 512 - 2;
+    private static final int PREFIX_RESERVE = 80;
+    private static final String ELLIPSIS = "\u2026";
 
+    //holds no per-channel state, so channels can be announced from any thread
     private Announcer() {}
 
     public static Announcer getAnnouncer() {
-        if (announcer == null) {
-            announcer = new Announcer();
-        }
         return announcer;
     }
 
-    public void announce(StreamChannel channel, ArrayList<StreamInfo> streams) {
-        //create and format the announcements based on given StreamChannel and list of changed streams
-        
-        //System.out.println("Creating announcements for: " + channel.getChannel());
-        //System.out.format("Prefs: flavor: %d, rand: %s, offline: %s%n", new Object[]{channel.getFlavor(), channel.isRandomizeFlavor(), channel.isAnnounceOffline()});
-        
-        setPreferences(channel);
-        ArrayList<String> announcements = createAnnouncements(streams);
+    public void announce(StreamChannel channel, ArrayList<StreamEvent> streams) {
+        //create and format the announcements based on given StreamChannel and list of stream changes
+
+        ArrayList<StreamEvent> toAnnounce = new ArrayList<>();
+        for (StreamEvent stream : streams) {
+            if (stream.getType() == StreamEvent.Type.OFFLINE && !channel.isAnnouncingOffline()) continue;
+            toAnnounce.add(stream);
+        }
+
+        //too many changes at once (startup, evening peak), switch to a digest
+        int maxBytes = MAX_LINE_BYTES - PREFIX_RESERVE - utf8Length("PRIVMSG " + channel.getChannel() + " :");
+        ArrayList<String> announcements;
+        if (channel.getDigestThreshold() > 0 && toAnnounce.size() > channel.getDigestThreshold()) {
+            announcements = createDigest(toAnnounce, getTemplate(channel), maxBytes);
+        } else {
+            announcements = coalesce(createAnnouncements(toAnnounce, channel), maxBytes);
+        }
         announceToChannel(announcements, channel.getChannel());
     }
-    
-    private void setPreferences(StreamChannel channel) {
-        randomize = channel.isFlavorRandomized();
-        announceOffline = channel.isAnnouncingOffline();
-        setFlavor(channel.getFlavor());
-    }
-    
-    private ArrayList<String> createAnnouncements(ArrayList<StreamInfo> streams) {
+
+    private ArrayList<String> createAnnouncements(ArrayList<StreamEvent> streams, StreamChannel channel) {
         ArrayList<String> announcements = new ArrayList<>();
-        for (StreamInfo stream : streams) {
-            announcements.add(formatAnnouncement(stream));
+        for (StreamEvent stream : streams) {
+            int flavor = channel.isFlavorRandomized() ? randomFlavor() : channel.getFlavor();
+            announcements.add(formatAnnouncement(stream, flavor));
         }
         return announcements;
     }
 
-    private void announceToChannel(ArrayList<String> announcements, String chan) {
-        for (String announcement : announcements) {
-            Bot.sleep(750);
-            Bot.say(announcement, chan);
+    private String formatAnnouncement(StreamEvent stream, int flavor) {
+        //each event is formatted at most once per flavor,
+        //every channel sharing that flavor reuses the same line
+
+        String announcement = stream.getAnnouncement(flavor);
+        if (announcement == null) {
+            announcement = TEMPLATES[flavor].format(stream);
+            stream.setAnnouncement(flavor, announcement);
         }
+        return announcement;
     }
 
-    private String formatAnnouncement(StreamInfo stream) {
-        //simple factory method to format announcement based on
-        //whether stream is on/offline or has updated status
+    private AnnouncementTemplate getTemplate(StreamChannel channel) {
+        return TEMPLATES[channel.isFlavorRandomized() ? randomFlavor() : channel.getFlavor()];
+    }
 
-        if (randomize) {
-            randomizeFlavor();
-        }
+    private static int randomFlavor() {
+        return ThreadLocalRandom.current().nextInt(FLAVORS.length);
+    }
 
-        if (announceOffline && stream.getStatus() == null) {
-            return formatOffline(stream);
-        } else if (stream.getStatusChanged()) {
-            return formatOnline("Status update:", stream);
-        } else {
-            return formatOnline("Online:", stream);
+    private ArrayList<String> coalesce(ArrayList<String> announcements, int maxBytes) {
+        //pack as many announcements as fit into each line
+        //an announcement too long on its own still gets its own line
+
+        ArrayList<String> lines = new ArrayList<>();
+        StringBuilder line = new StringBuilder();
+        int lineBytes = 0;
+        for (String announcement : announcements) {
+            int bytes = utf8Length(announcement);
+            if (lineBytes > 0 && lineBytes + 1 + bytes > maxBytes) {
+                lines.add(line.toString());
+                line.setLength(0);
+                lineBytes = 0;
+            }
+            if (lineBytes > 0) {
+                line.append(' ');
+                lineBytes++;
+            }
+            line.append(announcement);
+            lineBytes += bytes;
         }
+        if (lineBytes > 0) lines.add(line.toString());
+        return lines;
     }
 
-    private String formatOffline(StreamInfo stream) {
-        return separator + " " + labelColor + stream.getName() + infoColor + " went offline. " + separator;
-    }
+    private ArrayList<String> createDigest(ArrayList<StreamEvent> streams, AnnouncementTemplate template, int maxBytes) {
+        //one compact line per type of change, eg "12 streams went live: a, b, c..."
 
-    private String formatOnline(String header, StreamInfo streamInfo) {
-        return separator +
-                colorizeField(header, streamInfo.getName()) + 
-                separator +
-                colorizeField("Title:", streamInfo.getStatus()) +
-                separator + 
-                colorizeField("Game:", streamInfo.getGame()) +
-                separator +
-                labelColor + " " + streamInfo.getUrl() + " " +
-                separator;
+        LinkedHashMap<StreamEvent.Type, ArrayList<String>> names = new LinkedHashMap<>();
+        for (StreamEvent stream : streams) {
+            names.computeIfAbsent(stream.getType(), t -> new ArrayList<>()).add(stream.getName());
+        }
+
+        ArrayList<String> lines = new ArrayList<>();
+        for (StreamEvent.Type type : names.keySet()) {
+            ArrayList<String> typeNames = names.get(type);
+            String header = typeNames.size() + " streams " + digestLabel(type) + ":";
+            lines.add(formatDigest(template, header, typeNames, maxBytes));
+        }
+        return lines;
     }
 
-    private String colorizeField(String label, String info) {
-        return labelColor + " " + label + infoColor + " " + info + " ";
+    private String formatDigest(AnnouncementTemplate template, String header, ArrayList<String> names, int maxBytes) {
+        StringBuilder line = template.startDigest(header);
+        int lineBytes = utf8Length(line);
+
+        //leave room for the trailing ellipsis and separator
+        int limit = maxBytes - utf8Length(ELLIPSIS) - 1 - utf8Length(SEPARATOR);
+        for (int i=0; i<names.size(); i++) {
+            String name = (i == 0 ? " " : ", ") + names.get(i);
+            int bytes = utf8Length(name);
+            if (lineBytes + bytes > limit) {
+                line.append(ELLIPSIS);
+                break;
+            }
+            line.append(name);
+            lineBytes += bytes;
+        }
+        return line.append(' ').append(SEPARATOR).toString();
     }
 
-    
+    private static String digestLabel(StreamEvent.Type type) {
+        switch (type) {
+        case OFFLINE: return "went offline";
+        case STATUS_CHANGED: return "updated";
+        default: return "went live";
+        }
+    }
 
-    private void setFlavor(int flavorIndex) {
-        String flavor = FLAVORS[flavorIndex];
-        String[] colors = flavor.replaceAll("[a-z]", "").split(" ");
-        labelColor = colors[0];
-        infoColor = colors[1];
+    private static int utf8Length(CharSequence text) {
+        //count bytes without encoding the string
+
+        int bytes = 0;
+        for (int i=0; i<text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
     }
 
-    private void randomizeFlavor() {
-        setFlavor((int) (Math.random()*FLAVORS.length));
+    private void announceToChannel(ArrayList<String> announcements, String chan) {
+        for (String announcement : announcements) {
+            Bot.announce(announcement, chan);
+        }
     }
 
     public static String[] getFlavors() {
@@ -0,0 +1,231 @@
+package streambot;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 
+ * shared http client for all twitch api requests
+ * - one pooled client so connections are kept alive and reused
+ * - negotiates http/2 and gzip, bodies are read straight off the wire
+ * - every request has a connect and read timeout from BotConfig, and
+ *   the whole exchange, body included, has to finish within both
+ *   together; a body still open after that is closed under the reader,
+ *   so a hung socket can't freeze the calling thread
+ * - every request is paid for from the shared RateBudget first,
+ *   and rate limit headers are passed back to it
+ * - requests go through a CircuitBreaker, so they fail fast while
+ *   the api is down
+ */
+
+public class ApiClient {
+
+    private static ApiClient instance;
+
+    private HttpClient client;
+    private String clientID = "";
+    private String token = "";
+    private Duration readTimeout;
+    private long exchangeTimeout;
+    private RateBudget budget;
+    private CircuitBreaker breaker;
+
+    //closes response bodies that are still being read at their deadline
+    private ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "api-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static synchronized ApiClient getInstance() throws IOException {
+        if (instance == null) {
+            instance = new ApiClient(BotConfig.getInstance(), RateBudget.getInstance());
+        }
+        return instance;
+    }
+
+    private ApiClient(BotConfig config, RateBudget budget) {
+        this.budget = budget;
+        breaker = new CircuitBreaker(config.getBreakerFailures(), config.getBreakerCooldown());
+        clientID = config.getClientID();
+        token = config.getApiToken();
+        readTimeout = Duration.ofMillis(config.getReadTimeout());
+        exchangeTimeout = config.getConnectTimeout() + config.getReadTimeout();
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(config.getConnectTimeout()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    public InputStream openStream(String url, RateBudget.Use use) throws IOException {
+        return openStream(url, use, null);
+    }
+
+    public InputStream openStream(String url, RateBudget.Use use, String accept) throws IOException {
+        //send GET request and return the (decompressed) response body
+        //non-200 responses are thrown as IOExceptions, 429s (or no budget
+        //left to send it) as RateLimitedExceptions
+
+        if (!breaker.allowRequest()) {
+            throw new IOException("Circuit open, not requesting " + url);
+        }
+
+        //a request that ends without telling us whether the api is up
+        //(no budget, 429, interrupted) gives the breaker its trial back
+        boolean recorded = false;
+        try {
+            if (!budget.acquire(use)) {
+                throw new RateLimitedException("No api budget left for " + url);
+            }
+
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(readTimeout)
+                    .header("Client-ID", clientID)
+                    .header("Accept-Encoding", "gzip");
+            if (!token.isEmpty()) {
+                builder.header("Authorization", "Bearer " + token);
+            }
+            if (accept != null) {
+                builder.header("Accept", accept);
+            }
+            HttpRequest request = builder.GET().build();
+
+            //the request timeout only covers the headers, so the body
+            //gets whatever is left of the exchange deadline (see DeadlineStream)
+            long deadline = System.currentTimeMillis() + exchangeTimeout;
+            CompletableFuture<HttpResponse<InputStream>> pending = client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+            HttpResponse<InputStream> response;
+            try {
+                response = pending.get(exchangeTimeout, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                pending.cancel(true);
+                breaker.recordFailure();
+                recorded = true;
+                throw new HttpTimeoutException("No response within " + exchangeTimeout + "ms for " + url);
+            } catch (ExecutionException e) {
+                breaker.recordFailure();
+                recorded = true;
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                pending.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new IOException("Request interrupted " + url);
+            }
+
+            InputStream body = response.body();
+            if (response.statusCode() == 429) {
+                body.close();
+                budget.exhausted(response.headers());
+                throw new RateLimitedException("HTTP 429 for " + url);
+            }
+            if (response.statusCode() >= 500) {
+                breaker.recordFailure();
+            } else {
+                breaker.recordSuccess();
+            }
+            recorded = true;
+            budget.update(response.headers());
+            if (response.statusCode() != 200) {
+                body.close();
+                throw new IOException("HTTP " + response.statusCode() + " for " + url);
+            }
+            body = new DeadlineStream(body, url, deadline - System.currentTimeMillis());
+            if (response.headers().firstValue("Content-Encoding").orElse("").equalsIgnoreCase("gzip")) {
+                body = new GZIPInputStream(body, 8192);
+            }
+            return body;
+        } finally {
+            if (!recorded) {
+                breaker.releaseTrial();
+            }
+        }
+    }
+
+    private class DeadlineStream extends FilterInputStream {
+        //a response body that's closed by the watchdog if it's still
+        //open at the exchange deadline, which unblocks a stalled read
+
+        private String url;
+        private ScheduledFuture<?> timer;
+        private volatile boolean expired = false;
+        private volatile boolean closed = false;
+
+        DeadlineStream(InputStream in, String url, long millis) {
+            super(in);
+            this.url = url;
+            timer = watchdog.schedule(this::expire, Math.max(0, millis), TimeUnit.MILLISECONDS);
+        }
+
+        private void expire() {
+            //the reader already finished with it
+            if (closed) return;
+            expired = true;
+            breaker.recordFailure();
+            try {
+                in.close();
+            } catch (IOException e) {
+                System.out.println("Error closing stalled response " + e.getMessage());
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException e) {
+                throw timedOut(e);
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                return super.read(buffer, offset, length);
+            } catch (IOException e) {
+                throw timedOut(e);
+            }
+        }
+
+        private IOException timedOut(IOException e) {
+            return expired ? new HttpTimeoutException("Response body missed its " + exchangeTimeout + "ms deadline " + url) : e;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            timer.cancel(false);
+            super.close();
+        }
+    }
+
+    public boolean isCircuitClosed() {
+        return breaker.isClosed();
+    }
+
+    public String get(String url, RateBudget.Use use) throws IOException {
+        return get(url, use, null);
+    }
+
+    public String get(String url, RateBudget.Use use, String accept) throws IOException {
+        try (InputStream body = openStream(url, use, accept)) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -1,25 +1,25 @@
 package streambot;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.Socket;
-import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 
-public class Bot implements Runnable {
+public class Bot {
 
     private static final String versionInfo = "mud shark bot 1.24 - added header to api request per new twitch rule";
-    private static final String operChan = "#grigsby";
     
     StreamManager streamManager;
     BotConfig config;
 
-    private Socket socket;
+    private IrcTransport transport;
+    private CommandTable commands = new CommandTable();
+    private CommandExecutor executor;
     private boolean isRunning;
-    private BufferedReader in;
-    private static BufferedWriter out;
+
+    //which server connection each irc channel lives on
+    //key = irc channel name; value = IrcConnection for that channel's server
+    private static HashMap<String, IrcConnection> channelConnections = new HashMap<>();
 
     public Bot() {
         System.out.println("initializing bot");
@@ -33,7 +33,7 @@ public class Bot implements Runnable {
     private void start() {
         //initialize logger, config and stream manager
         //create socket and connect to server
-        //start thread to handle polling methods/twitch api checker
+        //start timers for keepalive and the twitch api poller
         //start message listener to process messages
 
         try {
@@ -42,14 +42,41 @@ public class Bot implements Runnable {
             FileLogger.logInfo("Bot started **************************************");
             
             config = BotConfig.getInstance();
-            streamManager = new StreamManager(config.getChannels());
+            streamManager = new StreamManager(config.getChannels(),
+                    new StreamPoller(TwitchApiUtils.getBackend(), config.getPollConcurrency(), config.getApiDeadline()),
+                    new PollTiers(config.getWarmPollInterval(), config.getColdPollInterval()));
+            registerCommands();
+            executor = new CommandExecutor(config.getCommandThreads(),
+                    config.getMaxCommandsPerUser(), config.getMaxCommandsPerChannel());
+
+            //keep runtime state across restarts, however the bot goes down
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                streamManager.saveDataAndWait();
+                streamManager.saveState();
+            }));
+
+            //one connection (and flood-limited queue) per server
+            transport = new IrcTransport();
+            for (ServerConfig server : config.getServers()) {
+                OutboundQueue outbound = new OutboundQueue(config.getFloodBurst(), config.getFloodInterval());
+                IrcConnection connection = new IrcConnection(server, outbound, versionInfo);
+                transport.addConnection(connection);
+                for (String channel : server.getChannels()) {
+                    channelConnections.put(channel, connection);
+                }
+            }
+
+            //with pushed notifications, polling is just a slow reconciliation sweep
+            int pollInterval = config.getPollInterval();
+            if (config.getWebhookPort() > 0) {
+                new WebhookReceiver(streamManager, config.getWebhookPort(), config.getWebhookSecret()).start();
+                pollInterval = config.getReconcileInterval();
+            }
 
-            System.out.println("Starting thread.");
-            Thread keepAlive = new Thread(this);
-            keepAlive.setDaemon(true);
-            keepAlive.start();
+            System.out.println("Starting poll scheduler.");
+            new PollScheduler(streamManager, this::keepAlive, pollInterval,
+                    config.getPollJitter(), config.getMaxPollBackoff()).start();
 
-            connectToServer();
             startMessageListener();
 
         } catch (IOException e) {
@@ -58,261 +85,190 @@ public class Bot implements Runnable {
     }
 
     private void startMessageListener() {
-        //****************************
-        //*****  MAIN LOOP HERE  *****
-        //****************************
+        //call processMessage for each line received on any server
+        //returns once the transport is stopped
 
-        //call processMessage for each line received
         isRunning = true;
-        String line = "";
-        while (isRunning) {
-            try {
-                while ((line = in.readLine()) != null ) {
-                    processMessage(line);
-                }
-            } catch (SocketException e) {
-
-                //********* RECONNECT ***********
-                //if code reaches here, we were disconnected
-                //keep bot running and try reconnecting
-                System.out.println("Disconnected from server!");
-                reconnect();
-            } catch (Exception e) {
-
-                //catch remaining exceptions that might occur from user commands
-                //(aka input validation that i forgot to account for)
-                System.out.println("Unexpected error occured: " + e.getMessage());
-                e.printStackTrace();
-            }
-        }
+        transport.run(this::processMessage);
 
         //if bot was stopped, update files before shutting down
         streamManager.saveData();
         shutdown();
     }
 
-    private void processMessage(String line) {
+    private void registerCommands() {
 
-        //print data received in console
-        System.out.println(line);
+        //op commands
+        commands.registerOp("!close", (connection, user, chan, args) -> {
+            //***FOR DEBUGGING***
+            connection.close();
+        });
 
-        //respond to user commands
-        if (line.contains("PRIVMSG")) {
+        commands.registerOp("SEND", (connection, user, chan, args) -> {
+            connection.send(String.join(" ", args).trim());
+        });
 
-            String[] breakup = line.split(" ");
+        commands.registerOp("!shutdown", (connection, user, chan, args) -> {
+            say("later friends", chan);
+            shutdown();
+        });
 
-            //grab message credentials
-            String user = breakup[0].substring(1, breakup[0].indexOf("!")).toLowerCase();
-            String chan = breakup[2];
-            String cmd = breakup[3].substring(1);
-
-            //op commands
-            if (config.isOp(user)) {
-
-                if (cmd.equals("!close")) {
-                    closeSocket();
-                }
-
-                if (cmd.equals("SEND")) {
-                    StringBuilder sb = new StringBuilder();
-                    for (int i=4; i<breakup.length; i++) {
-                        sb.append(breakup[i]);
-                        sb.append(" ");
-                    }
-                    send(sb.toString().trim());
-                }
-
-                if (cmd.equals("!shutdown")) {
-                    say("later friends", chan);
-                    shutdown();
-                }
+        commands.registerOp("!import", (connection, user, chan, args) -> {
+            //bulk add every name in a file in data/ to this channel's list
+            if (args.length == 1 && channelConnections.containsKey(chan)) {
+                streamManager.importStreams(args[0], chan);
+            }
+        });
 
-                if (cmd.equals("!pt")) {
-
-                    StringBuilder builder = new StringBuilder();
-                    for (int i=4; i<breakup.length; i++) {
-                        builder.append(breakup[i]);
-                        builder.append(" ");
-                    }
-
-                    for (int i=0; i<3; i++) {
-                        sleep(3000);
-                        String[] partyTime = Announcer.createPartyMessage(builder.toString(), (int)(Math.random()*16));
-                        for (String pt : partyTime) {
-                            say(pt, chan);
-                        }
-                    }
+        commands.registerOp("!digest", (connection, user, chan, args) -> {
+            //changes per cycle before announcements become a digest (0 = never)
+            if (args.length == 1 && channelConnections.containsKey(chan)) {
+                streamManager.setDigestThreshold(args[0], chan);
+            }
+        });
+
+        commands.registerOp("!pt", (connection, user, chan, args) -> {
+            String message = String.join(" ", args) + " ";
+            for (int i=0; i<3; i++) {
+                String[] partyTime = Announcer.createPartyMessage(message, (int)(Math.random()*16));
+                for (String pt : partyTime) {
+                    say(pt, chan);
                 }
             }
+        });
+
+        //stream chan commands
+        commands.registerChannel("!help", (connection, user, chan, args) -> {
+            say("- bot commands -", chan);
+            say("- !live [fresh] - show list of who is currently live, 'fresh' re-checks twitch", chan);
+            say("- !add <twitch_name> [more names...] - add streams to list using their twitch names", chan);
+            say("- !changeflavor - change display colors", chan);
+            say("- !offline <on/off> - change whether bot notifies when streams go offline", chan);
+        });
+
+        commands.registerChannel("!live", (connection, user, chan, args) -> {
+            boolean fresh = args.length == 1 && args[0].equalsIgnoreCase("fresh");
+            streamManager.getLiveStreams(chan, fresh);
+        });
+
+        commands.registerChannel("!add", (connection, user, chan, args) -> {
+            if (args.length == 1) {
+                streamManager.addStream(args[0].toLowerCase(), chan);
+            } else if (args.length > 1) {
+                streamManager.addStreams(new ArrayList<>(Arrays.asList(args)), chan);
+            }
+        });
 
-            //stream chan commands
-            if (config.getChannels().contains(chan)) {
-
-                if (cmd.equals("!help")) {
-                    say("- bot commands -", chan);
-                    say("- !live - show list of who is currently live", chan);
-                    say("- !add <twitch_name> - add stream to list using their twitch name", chan);
-                    say("- !changeflavor - change display colors", chan);
-                    say("- !offline <on/off> - change whether bot notifies when streams go offline", chan);
-                }
+        commands.registerChannel("!remove", (connection, user, chan, args) -> {
+            if (args.length == 1) {
+                streamManager.removeStream(args[0].toLowerCase(), chan);
+            }
+        });
 
-                if (cmd.equals("!live")) {
-                    streamManager.getLiveStreams(chan);
-                }
+        commands.registerChannel("!check", (connection, user, chan, args) -> {
+            if (args.length == 1) {
+                streamManager.checkStream(args[0].toLowerCase(), chan);
+            }
+        });
 
-                if (cmd.equals("!add")) {
-                    if (breakup.length == 5) {
-                        String stream = breakup[4].toLowerCase();
-                        streamManager.addStream(stream, chan);
-                    }
-                }
+        commands.registerChannel("!changeflavor", (connection, user, chan, args) -> {
+            if (args.length == 0) {
+                streamManager.displayFlavors(chan);
+            }
+            if (args.length == 1) {
+                streamManager.changeFlavor(args[0], chan);
+            }
+        });
 
-                if (cmd.equals("!remove")) {
-                    if (breakup.length == 5) {
-                        String stream = breakup[4].toLowerCase();
-                        streamManager.removeStream(stream, chan);
-                    }
-                }
+        commands.registerChannel("!offline", (connection, user, chan, args) -> {
+            if (args.length == 0) {
+                say("usage: !offline <on/off>", chan);
+            }
+            if (args.length == 1) {
+                streamManager.setOfflineAnnouncements(args[0], chan);
+            }
+        });
+    }
 
-                if (cmd.equals("!check")) {
-                    if (breakup.length == 5) {
-                        String stream = breakup[4].toLowerCase();
-                        streamManager.checkStream(stream, chan);
-                    }
-                }
+    private void processMessage(IrcConnection connection, String line) {
 
-                if (cmd.equals("!changeflavor")) {
-                    if (breakup.length == 4) {
-                        streamManager.displayFlavors(chan);
-                    }
-                    if (breakup.length == 5) {
-                        streamManager.changeFlavor(breakup[4], chan);
-                    }
-                }
+        IrcMessage message = new IrcMessage(line);
 
-                if (cmd.equals("!offline")) {
-                    if (breakup.length == 4) {
-                        say("usage: !offline <on/off>", chan);
-                    }
-                    if (breakup.length == 5) {
-                        streamManager.setOfflineAnnouncements(breakup[4], chan);
-                    }
-                }
-            }
+        //print anything that isn't chat in console
+        if (!message.isCommand("PRIVMSG")) {
+            System.out.println(line);
+            return;
         }
-    }
 
-    protected static void say(String msg, String chan) {
-        //send message to specific channel on irc server
-        //keep static/protected so announcer + stream manager can access
+        //most chat isn't a command, bail out before splitting anything
+        char first = message.trailingCharAt(0);
+        if (first != '!' && first != 'S') return;
 
-        try {
-            out.write("PRIVMSG " + chan + " :" + msg + "\r\n");
-            out.flush();
-        } catch (IOException e) {
-            System.out.println("Error sending message to channel ");
-            e.printStackTrace();
+        //respond to user commands
+        String[] words = message.getTrailing().split(" ");
+        String[] args = Arrays.copyOfRange(words, 1, words.length);
+        String user = message.getNick();
+        String chan = message.getParam(0);
+
+        BotCommand command = null;
+        if (config.isOp(user)) {
+            command = commands.getOpCommand(words[0]);
         }
-    }
-
-    private void send(String msg) {
-        try {
-            out.write(msg + "\r\n");
-            out.flush();
-        } catch (IOException e) {
-            System.out.println("Error sending to server " + e.getMessage());
+        if (command == null && channelConnections.containsKey(chan)) {
+            command = commands.getChannelCommand(words[0]);
         }
-    }
-
-    private void joinChannels() {
-        for (String channel : config.getChannels()) {
-            send("JOIN :" + channel);
+        if (command != null) {
+            //run off the read loop so slow commands can't hold up PINGs
+            final BotCommand toRun = command;
+            executor.submit(chan, user, () -> toRun.execute(connection, user, chan, args));
         }
-        //show version for confirmation
-        FileLogger.logInfo("VERSIONINFO - " + versionInfo);
-        say(versionInfo, operChan);
     }
 
-    private void connectToServer() {
-        System.out.println("Connecting to server...");
-        try {
-            socket = new Socket(config.getServer(), config.getPort());
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
-            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
-            send("NICK " + config.getNick());
-            send("USER " + config.getNick() + " " + config.getNick() + " " + config.getNick() + " :MSDLBot");
-            send("PASS " + config.getIdent());
-
-            //read data from server until connected
-            String line;
-            while ((line = in.readLine()) != null) {
-                System.out.println("***CONNECTING***:" + line);
-
-                //respond to ping
-                if (line.startsWith("PING")) {
-                    send("PONG " + line.substring(5));
-                }
-
-                //nickname already in use
-                if (line.contains("433")) {
-                    FileLogger.logWarning("Nickname already in use!");
-                    closeSocket();
-                    return;
-                }
-                
-                //connected
-                if (line.contains("004")) {
-                    FileLogger.logInfo("Connected successfully: " + config.getServer());
-                    break;
-                }
-                
-                
-            }
+    protected static void say(String msg, String chan) {
+        //send message to specific channel on irc server
+        //keep static/protected so announcer + stream manager can access
+        //queued ahead of announcements since it's a reply to a user
 
-            joinChannels();
-        } catch (IOException e) {
-            FileLogger.logInfo("Could not connect to server " + e.getMessage());
-        }
+        queueMessage(msg, chan, OutboundQueue.Lane.REPLY);
     }
 
-    protected static void sleep(long millis) {
-        try {
-            Thread.sleep(millis);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-    }
+    protected static void announce(String msg, String chan) {
+        //same as say, but queued behind any pending command replies
 
-    private void reconnect() {
-        sleep(30000);
-        FileLogger.logInfo("Disconnected from server, attempting reconnect");
-        connectToServer();
+        queueMessage(msg, chan, OutboundQueue.Lane.BULK);
     }
 
-    private void closeSocket() {
-        //***FOR DEBUGGING***
-        try {
-            socket.close();
-        } catch (IOException e) {
-            System.out.println("Error closing socket. " + e.getMessage());
+    private static void queueMessage(String msg, String chan, OutboundQueue.Lane lane) {
+        IrcConnection connection = channelConnections.get(chan);
+        if (connection == null) {
+            System.out.println("No server connection for channel " + chan);
+            return;
         }
+        connection.say(msg, chan, lane);
     }
 
     private void shutdown() {
         FileLogger.logInfo("Bot shutting down!");
         isRunning = false;
+
+        //the selector thread does the writing, so let it send what's
+        //queued (the !shutdown reply, announcements) before stopping it
+        if (transport.isRunning()) {
+            long deadline = System.currentTimeMillis() + 5000;
+            for (IrcConnection connection : transport.getConnections()) {
+                connection.getOutbound().awaitEmpty(Math.max(1, deadline - System.currentTimeMillis()));
+                connection.awaitWritten(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+        }
+        transport.stop();
         System.exit(0);
     }
 
-    @Override
-    public void run() {
-        //stay connected to server
-        //check for stream updates
+    private void keepAlive() {
+        //stay connected to servers
 
-        while (true) {
-            sleep(60000);
-            send("PING " + config.getServer());
-            streamManager.checkForUpdates();
+        for (IrcConnection connection : transport.getConnections()) {
+            connection.send("PING " + connection.getServer().getServer());
         }
     }
 }
@@ -0,0 +1,12 @@
+package streambot;
+
+/**
+ * 
+ * a user command registered in the bot's CommandTable
+ * args are the words following the command name
+ */
+
+public interface BotCommand {
+
+    void execute(IrcConnection connection, String user, String chan, String[] args);
+}
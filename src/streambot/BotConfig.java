@@ -18,10 +18,37 @@ public class BotConfig {
     private String ident = "";
     private int port = -1;
     private String clientID = "";
+    private String apiBackend = "kraken";
+    private String apiBaseUrl = "";
+    private String apiToken = "";
+    private int apiBatchSize = 100;
+    private int pollConcurrency = 4;
+    private int connectTimeout = 5000;
+    private int readTimeout = 10000;
+    private int floodBurst = 4;
+    private int floodInterval = 750;
+    private int commandThreads = 4;
+    private int pollInterval = 30000;
+    private int warmPollInterval = 120000;
+    private int coldPollInterval = 300000;
+    private int pollJitter = 5000;
+    private int maxPollBackoff = 600000;
+    private int apiDeadline = 15000;
+    private int breakerFailures = 5;
+    private int breakerCooldown = 30000;
+    private int webhookPort = 0;
+    private String webhookSecret = "";
+    private int reconcileInterval = 300000;
+    private int rateLimit = 800;
+    private int pollReserve = 400;
+    private int commandReserve = 20;
+    private int maxCommandsPerUser = 2;
+    private int maxCommandsPerChannel = 10;
 
     private ArrayList<String> ops = new ArrayList<>();
     private ArrayList<String> mods = new ArrayList<>();
     private ArrayList<String> channels = new ArrayList<>();
+    private ArrayList<ServerConfig> servers = new ArrayList<>();
 
     public static BotConfig getInstance() throws IOException {
         if (instance == null) {
@@ -35,15 +62,100 @@ public class BotConfig {
         String jsonText = new String(Files.readAllBytes(Paths.get("data" + File.separator + "config.json")));
         JSONObject json = new JSONObject(jsonText);
 
-        server = json.getString("server");
+        //server and port can be left out when a "servers" array is given
+        server = json.optString("server", "");
         nick = json.getString("nick");
         ident = json.getString("ident");
-        port = json.getInt("port");
+        port = json.optInt("port", 6667);
         clientID = json.getString("client_id");
 
-        JSONArray jsonChannelsArray = json.getJSONArray("channels");
-        for(int i=0; i<jsonChannelsArray.length(); i++) {
-            channels.add(jsonChannelsArray.getString(i));
+        //optional, api backend ("kraken" or "helix"), its base url (e.g. a local
+        //mock server), app access token (helix needs one), and names per request
+        apiBackend = json.optString("api_backend", apiBackend).toLowerCase();
+        if (!apiBackend.equals("kraken") && !apiBackend.equals("helix")) {
+            throw new IOException("Unknown api_backend " + apiBackend);
+        }
+        boolean helix = apiBackend.equals("helix");
+        apiBaseUrl = json.optString("api_base_url", helix ? HelixApi.DEFAULT_BASE_URL : KrakenApi.DEFAULT_BASE_URL);
+        apiToken = json.optString("api_token", apiToken);
+        apiBatchSize = Math.max(1, json.optInt("api_batch_size", helix ? HelixApi.MAX_BATCH : KrakenApi.MAX_BATCH));
+
+        //optional, number of chunk requests sent in parallel each poll,
+        //helix limits by request count rather than load, so it can take more
+        pollConcurrency = Math.max(1, json.optInt("poll_concurrency", helix ? 8 : pollConcurrency));
+
+        //optional, api request timeouts in milliseconds
+        connectTimeout = json.optInt("connect_timeout_ms", connectTimeout);
+        readTimeout = json.optInt("read_timeout_ms", readTimeout);
+
+        //optional, longest a poll request may take overall (hedges included),
+        //and failures in a row / ms paused before the api is tried again
+        apiDeadline = Math.max(1000, json.optInt("api_deadline_ms", apiDeadline));
+        breakerFailures = Math.max(1, json.optInt("breaker_failures", breakerFailures));
+        breakerCooldown = Math.max(1000, json.optInt("breaker_cooldown_ms", breakerCooldown));
+
+        //optional, outgoing flood limit: burst size and ms per extra line
+        floodBurst = Math.max(1, json.optInt("flood_burst", floodBurst));
+        floodInterval = Math.max(1, json.optInt("flood_interval_ms", floodInterval));
+
+        //optional, poll timing: base interval, random jitter, and longest backoff after errors
+        pollInterval = Math.max(1000, json.optInt("poll_interval_ms", pollInterval));
+        pollJitter = Math.max(0, json.optInt("poll_jitter_ms", pollJitter));
+        maxPollBackoff = Math.max(pollInterval, json.optInt("max_poll_backoff_ms", maxPollBackoff));
+
+        //optional, how often recently live (warm) and dormant (cold) streams are polled,
+        //live streams are polled every poll_interval_ms
+        warmPollInterval = Math.max(pollInterval, json.optInt("warm_poll_interval_ms", warmPollInterval));
+        coldPollInterval = Math.max(warmPollInterval, json.optInt("cold_poll_interval_ms", coldPollInterval));
+
+        //optional, port for pushed stream notifications (0 = polling only), the secret
+        //they're signed with, and the poll interval used as a reconciliation sweep with them
+        webhookPort = Math.max(0, json.optInt("webhook_port", webhookPort));
+        webhookSecret = json.optString("webhook_secret", webhookSecret);
+        reconcileInterval = Math.max(pollInterval, json.optInt("reconcile_interval_ms", reconcileInterval));
+        if (webhookPort > 0 && webhookSecret.length() < 10) {
+            throw new IOException("webhook_secret must be at least 10 characters");
+        }
+
+        //optional, api requests per minute until the api reports its own limit,
+        //and how many of those are kept back for the poller and for commands
+        rateLimit = Math.max(1, json.optInt("rate_limit_per_minute", rateLimit));
+        pollReserve = Math.max(0, json.optInt("poll_reserve", pollReserve));
+        commandReserve = Math.max(0, json.optInt("command_reserve", commandReserve));
+        if (pollReserve + commandReserve >= rateLimit) {
+            throw new IOException("poll_reserve + command_reserve must be less than rate_limit_per_minute");
+        }
+
+        //optional, command worker pool size and queued command caps
+        commandThreads = Math.max(1, json.optInt("command_threads", commandThreads));
+        maxCommandsPerUser = Math.max(1, json.optInt("max_commands_per_user", maxCommandsPerUser));
+        maxCommandsPerChannel = Math.max(1, json.optInt("max_commands_per_channel", maxCommandsPerChannel));
+
+        //either a single server from the top-level settings,
+        //or a "servers" array to join several networks at once
+        JSONArray jsonServersArray = json.optJSONArray("servers");
+        if (jsonServersArray == null) {
+            servers.add(new ServerConfig(server, server, port, nick, ident, getStrings(json.getJSONArray("channels"))));
+        } else {
+            for (int i=0; i<jsonServersArray.length(); i++) {
+                JSONObject jsonServer = jsonServersArray.getJSONObject(i);
+                String host = jsonServer.getString("server");
+                servers.add(new ServerConfig(jsonServer.optString("name", host), host,
+                        jsonServer.optInt("port", port),
+                        jsonServer.optString("nick", nick),
+                        jsonServer.optString("ident", ident),
+                        getStrings(jsonServer.getJSONArray("channels"))));
+            }
+        }
+
+        //channels are looked up by name, so they have to be unique across servers
+        for (ServerConfig serverConfig : servers) {
+            for (String channel : serverConfig.getChannels()) {
+                if (channels.contains(channel)) {
+                    throw new IOException("Channel " + channel + " is configured on more than one server");
+                }
+                channels.add(channel);
+            }
         }
 
         JSONObject jsonUsers = json.getJSONObject("users");
@@ -58,6 +170,14 @@ public class BotConfig {
         }
     }
 
+    private static ArrayList<String> getStrings(JSONArray jsonArray) {
+        ArrayList<String> strings = new ArrayList<>();
+        for (int i=0; i<jsonArray.length(); i++) {
+            strings.add(jsonArray.getString(i));
+        }
+        return strings;
+    }
+
     public String getNick() {
         return nick;
     }
@@ -78,6 +198,114 @@ public class BotConfig {
         return clientID;
     }
 
+    public String getApiBackend() {
+        return apiBackend;
+    }
+
+    public String getApiBaseUrl() {
+        return apiBaseUrl;
+    }
+
+    public String getApiToken() {
+        return apiToken;
+    }
+
+    public int getApiBatchSize() {
+        return apiBatchSize;
+    }
+
+    public int getPollConcurrency() {
+        return pollConcurrency;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public int getApiDeadline() {
+        return apiDeadline;
+    }
+
+    public int getBreakerFailures() {
+        return breakerFailures;
+    }
+
+    public int getBreakerCooldown() {
+        return breakerCooldown;
+    }
+
+    public int getFloodBurst() {
+        return floodBurst;
+    }
+
+    public int getFloodInterval() {
+        return floodInterval;
+    }
+
+    public int getPollInterval() {
+        return pollInterval;
+    }
+
+    public int getWarmPollInterval() {
+        return warmPollInterval;
+    }
+
+    public int getColdPollInterval() {
+        return coldPollInterval;
+    }
+
+    public int getPollJitter() {
+        return pollJitter;
+    }
+
+    public int getMaxPollBackoff() {
+        return maxPollBackoff;
+    }
+
+    public int getWebhookPort() {
+        return webhookPort;
+    }
+
+    public String getWebhookSecret() {
+        return webhookSecret;
+    }
+
+    public int getReconcileInterval() {
+        return reconcileInterval;
+    }
+
+    public int getRateLimit() {
+        return rateLimit;
+    }
+
+    public int getPollReserve() {
+        return pollReserve;
+    }
+
+    public int getCommandReserve() {
+        return commandReserve;
+    }
+
+    public int getCommandThreads() {
+        return commandThreads;
+    }
+
+    public int getMaxCommandsPerUser() {
+        return maxCommandsPerUser;
+    }
+
+    public int getMaxCommandsPerChannel() {
+        return maxCommandsPerChannel;
+    }
+
+    public ArrayList<ServerConfig> getServers() {
+        return servers;
+    }
+
     public ArrayList<String> getChannels() {
         return channels;
     }
@@ -0,0 +1,83 @@
+package streambot;
+
+/**
+ *
+ * stops calling the twitch api while it's down
+ * - opens after a run of consecutive failed requests, and fails
+ *   requests straight away instead of waiting on timeouts
+ * - after the cooldown a single trial request is let through,
+ *   closing the circuit if it works and reopening it if not; a trial
+ *   that ends without an answer is released for the next request
+ * the poller treats anything but a closed circuit as an incomplete
+ * cycle, so an outage can't turn into a wave of offline announcements
+ */
+
+public class CircuitBreaker {
+
+    private enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private long openedAt = 0;
+    private boolean trialInFlight = false;
+
+    private int threshold;
+    private long cooldown;
+
+    public CircuitBreaker(int threshold, long cooldown) {
+        this.threshold = threshold;
+        this.cooldown = cooldown;
+    }
+
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt < cooldown) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            default:
+                //half open, only one trial request at a time
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            FileLogger.logInfo("Twitch api is responding again, circuit closed");
+        }
+        state = State.CLOSED;
+        failures = 0;
+        trialInFlight = false;
+    }
+
+    public synchronized void recordFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= threshold)) {
+            if (state == State.CLOSED) {
+                FileLogger.logWarning("Twitch api failed " + failures + " times in a row, circuit opened");
+            }
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            trialInFlight = false;
+        }
+    }
+
+    public synchronized void releaseTrial() {
+        //the request ended without an answer either way (interrupted,
+        //rate limited), so the next request can be the trial instead
+        trialInFlight = false;
+    }
+
+    public synchronized boolean isClosed() {
+        return state == State.CLOSED;
+    }
+}
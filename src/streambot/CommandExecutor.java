@@ -0,0 +1,93 @@
+package streambot;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 
+ * runs user commands on a worker pool instead of the irc read loop
+ * - commands from one channel run one at a time, in the order received
+ * - different channels run in parallel, up to the pool size
+ * - caps on queued commands per user and per channel, anything past
+ *   that is dropped so one spammer can't back up the whole bot
+ */
+
+public class CommandExecutor {
+
+    private ExecutorService workers;
+    private int maxPerUser;
+    private int maxPerChannel;
+
+    //commands waiting or running for each channel, in order
+    private HashMap<String, ArrayDeque<Runnable>> channelQueues = new HashMap<>();
+
+    //number of commands waiting or running for each user
+    private HashMap<String, Integer> userCounts = new HashMap<>();
+
+    public CommandExecutor(int threads, int maxPerUser, int maxPerChannel) {
+        this.maxPerUser = maxPerUser;
+        this.maxPerChannel = maxPerChannel;
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "command-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public synchronized boolean submit(String chan, String user, Runnable command) {
+        //queue a command, false if the user or channel is over its cap
+
+        ArrayDeque<Runnable> queue = channelQueues.get(chan);
+        int userCount = userCounts.getOrDefault(user, 0);
+        if (userCount >= maxPerUser || (queue != null && queue.size() >= maxPerChannel)) {
+            System.out.println("Dropping command from " + user + " in " + chan + ", too many queued");
+            return false;
+        }
+        userCounts.put(user, userCount + 1);
+
+        Runnable task = () -> {
+            try {
+                command.run();
+            } catch (Exception e) {
+
+                //catch remaining exceptions that might occur from user commands
+                //(aka input validation that i forgot to account for)
+                System.out.println("Unexpected error occured: " + e.getMessage());
+                e.printStackTrace();
+            } finally {
+                finished(chan, user);
+            }
+        };
+
+        if (queue == null) {
+            //channel idle, start running right away
+            queue = new ArrayDeque<>();
+            channelQueues.put(chan, queue);
+            queue.add(task);
+            workers.execute(task);
+        } else {
+            queue.add(task);
+        }
+        return true;
+    }
+
+    private synchronized void finished(String chan, String user) {
+        int userCount = userCounts.get(user) - 1;
+        if (userCount == 0) {
+            userCounts.remove(user);
+        } else {
+            userCounts.put(user, userCount);
+        }
+
+        //start the channel's next command, if any
+        ArrayDeque<Runnable> queue = channelQueues.get(chan);
+        queue.poll();
+        if (queue.isEmpty()) {
+            channelQueues.remove(chan);
+        } else {
+            workers.execute(queue.peek());
+        }
+    }
+}
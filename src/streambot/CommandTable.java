@@ -0,0 +1,32 @@
+package streambot;
+
+import java.util.HashMap;
+
+/**
+ * 
+ * lookup table from command name to BotCommand
+ * - op commands work anywhere, but only for ops
+ * - channel commands work for anyone, but only in stream channels
+ */
+
+public class CommandTable {
+
+    private HashMap<String, BotCommand> opCommands = new HashMap<>();
+    private HashMap<String, BotCommand> channelCommands = new HashMap<>();
+
+    public void registerOp(String name, BotCommand command) {
+        opCommands.put(name, command);
+    }
+
+    public void registerChannel(String name, BotCommand command) {
+        channelCommands.put(name, command);
+    }
+
+    public BotCommand getOpCommand(String name) {
+        return opCommands.get(name);
+    }
+
+    public BotCommand getChannelCommand(String name) {
+        return channelCommands.get(name);
+    }
+}
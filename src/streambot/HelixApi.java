@@ -0,0 +1,132 @@
+package streambot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ *
+ * the helix api
+ * - streams are looked up by user id where the NameCache knows it, by
+ *   login otherwise; results found by id are mapped back to the name
+ *   they're watched as, so a stream that was renamed keeps working
+ * - pages are followed by pagination cursor until one comes back empty
+ * - needs an app access token (api_token) as well as the client id
+ */
+
+public class HelixApi implements StreamApi {
+
+    public static final String DEFAULT_BASE_URL = "https://api.twitch.tv/helix";
+    public static final int MAX_BATCH = 100;
+
+    private String baseUrl;
+    private int batchSize;
+
+    public HelixApi(String baseUrl, int batchSize) {
+        this.baseUrl = baseUrl;
+        this.batchSize = Math.min(MAX_BATCH, batchSize);
+    }
+
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public boolean pollsById() {
+        return true;
+    }
+
+    @Override
+    public ArrayList<LiveStream> getLiveStreams(ArrayList<String> logins, RateBudget.Use use) throws IOException {
+        //parse each page as it arrives, and stop at the last one
+
+        //key = user id; value = name it's watched as
+        HashMap<String, String> watchedAs = new HashMap<>();
+        NameCache names = NameCache.getInstance();
+        StringBuilder query = new StringBuilder(baseUrl).append("/streams?first=").append(MAX_BATCH);
+        for (String name : logins) {
+            String id = names.getId(name);
+            if (id != null) {
+                query.append("&user_id=").append(id);
+                watchedAs.put(id, name);
+            } else {
+                query.append("&user_login=").append(name);
+            }
+        }
+
+        ArrayList<LiveStream> streams = new ArrayList<>();
+        String cursor = null;
+        do {
+            String url = cursor == null ? query.toString()
+                    : query + "&after=" + URLEncoder.encode(cursor, StandardCharsets.UTF_8);
+            int before = streams.size();
+            try (InputStream body = ApiClient.getInstance().openStream(url, use)) {
+                cursor = HelixStreamsParser.parse(body, streams);
+            }
+            if (streams.size() == before) break;
+        } while (cursor != null && streams.size() < logins.size());
+
+        for (int i=0; i<streams.size(); i++) {
+            String name = watchedAs.get(streams.get(i).getId());
+            if (name != null && !name.equals(streams.get(i).getName())) {
+                streams.set(i, streams.get(i).renamed(name));
+            }
+        }
+        return streams;
+    }
+
+    @Override
+    public ArrayList<TwitchUser> getUsers(ArrayList<String> names, RateBudget.Use use) throws IOException {
+        StringBuilder url = new StringBuilder(baseUrl).append("/users?");
+        for (int i=0; i<names.size(); i++) {
+            if (i > 0) url.append('&');
+            url.append("login=").append(names.get(i));
+        }
+
+        ArrayList<TwitchUser> found = new ArrayList<>();
+        try (InputStream body = ApiClient.getInstance().openStream(url.toString(), use)) {
+            JsonPullParser parser = new JsonPullParser(new InputStreamReader(body, StandardCharsets.UTF_8));
+            parser.beginObject();
+            while (parser.hasNext()) {
+                if (!parser.nextName().equals("data")) {
+                    parser.skipValue();
+                    continue;
+                }
+                parser.beginArray();
+                while (parser.hasNext()) {
+                    String id = null;
+                    String login = null;
+                    String displayName = "";
+                    parser.beginObject();
+                    while (parser.hasNext()) {
+                        switch (parser.nextName()) {
+                        case "id":
+                            id = parser.nextString();
+                            break;
+                        case "login":
+                            login = parser.nextString().toLowerCase();
+                            break;
+                        case "display_name":
+                            displayName = parser.nextStringOrEmpty();
+                            break;
+                        default:
+                            parser.skipValue();
+                        }
+                    }
+                    parser.endObject();
+                    if (id != null && login != null) {
+                        found.add(new TwitchUser(id, login, displayName.isEmpty() ? login : displayName));
+                    }
+                }
+                parser.endArray();
+            }
+            parser.endObject();
+        }
+        return found;
+    }
+}
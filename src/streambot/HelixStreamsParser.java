@@ -0,0 +1,109 @@
+package streambot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ *
+ * reads a helix /streams response directly from the response body
+ * - only id, login, display name, title, game and viewers are kept,
+ *   every other field is skipped without being decoded, keys included
+ * - streams are added to the caller's list, one page at a time
+ * - returns the pagination cursor, null on the last page
+ */
+
+public class HelixStreamsParser {
+
+    private static final String[] PAGE_FIELDS = {"data", "pagination"};
+    private static final int DATA = 0;
+    private static final int PAGINATION = 1;
+
+    private static final String[] PAGINATION_FIELDS = {"cursor"};
+    private static final int CURSOR = 0;
+
+    private static final String[] STREAM_FIELDS = {"user_id", "user_login", "user_name", "title", "game_name", "viewer_count"};
+    private static final int USER_ID = 0;
+    private static final int USER_LOGIN = 1;
+    private static final int USER_NAME = 2;
+    private static final int TITLE = 3;
+    private static final int GAME_NAME = 4;
+    private static final int VIEWER_COUNT = 5;
+
+    public static String parse(InputStream in, ArrayList<LiveStream> streams) throws IOException {
+
+        String cursor = null;
+        JsonPullParser parser = new JsonPullParser(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            int field = parser.nextName(PAGE_FIELDS);
+            if (field == DATA) {
+                parser.beginArray();
+                while (parser.hasNext()) {
+                    streams.add(parseStream(parser));
+                }
+                parser.endArray();
+            } else if (field == PAGINATION) {
+                parser.beginObject();
+                while (parser.hasNext()) {
+                    if (parser.nextName(PAGINATION_FIELDS) == CURSOR) {
+                        cursor = parser.nextStringOrEmpty();
+                    } else {
+                        parser.skipValue();
+                    }
+                }
+                parser.endObject();
+            } else {
+                parser.skipValue();
+            }
+        }
+        parser.endObject();
+
+        return cursor == null || cursor.isEmpty() ? null : cursor;
+    }
+
+    private static LiveStream parseStream(JsonPullParser parser) throws IOException {
+
+        String id = "";
+        String name = "";
+        String displayName = "";
+        String status = "";
+        String game = "";
+        int viewers = 0;
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName(STREAM_FIELDS)) {
+            case USER_ID:
+                id = parser.nextString();
+                break;
+            case USER_LOGIN:
+                name = parser.nextString();
+                break;
+            case USER_NAME:
+                displayName = parser.nextStringOrEmpty();
+                break;
+            case TITLE:
+                status = parser.nextStringOrEmpty();
+                break;
+            case GAME_NAME:
+                game = parser.nextStringOrEmpty();
+                break;
+            case VIEWER_COUNT:
+                viewers = parser.nextInt();
+                break;
+            default:
+                parser.skipValue();
+            }
+        }
+        parser.endObject();
+
+        if (displayName.isEmpty()) displayName = name;
+        LiveStream stream = new LiveStream(name, displayName, status, game, viewers);
+        stream.setId(id);
+        return stream;
+    }
+}
@@ -0,0 +1,263 @@
+package streambot;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+/**
+ * 
+ * one non-blocking connection to an irc server, driven by IrcTransport
+ * - lines are decoded straight out of a reusable read buffer
+ * - outgoing lines come from this connection's OutboundQueue and are
+ *   written by the selector thread whenever the socket is writable
+ * - handles registration, PING and nick-in-use itself, everything
+ *   else is passed on to the transport's line handler
+ */
+
+public class IrcConnection {
+
+    private static final long RECONNECT_DELAY = 30000;
+    private static final String OPER_CHAN = "#grigsby";
+
+    private ServerConfig server;
+    private OutboundQueue outbound;
+    private String versionInfo = "";
+
+    private Selector selector;
+    private SocketChannel channel;
+    private volatile SelectionKey key;
+
+    private ByteBuffer readBuffer = ByteBuffer.allocate(16384);
+    private ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+
+    //connections can be closed from command threads too (!close)
+    private volatile boolean registered = false;
+    private volatile long reconnectAt = 0;
+
+    public IrcConnection(ServerConfig server, OutboundQueue outbound, String versionInfo) {
+        this.server = server;
+        this.outbound = outbound;
+        this.versionInfo = versionInfo;
+    }
+
+    public void connect(Selector selector) {
+        System.out.println("Connecting to server " + server.getServer() + "...");
+        this.selector = selector;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+
+            //local servers can accept right away, then there's no OP_CONNECT to wait for
+            if (channel.connect(new InetSocketAddress(server.getServer(), server.getPort()))) {
+                key = channel.register(selector, SelectionKey.OP_READ, this);
+                connected();
+            } else {
+                key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+            }
+        } catch (IOException e) {
+            FileLogger.logInfo("Could not connect to server " + server.getServer() + " " + e.getMessage());
+            close();
+        }
+    }
+
+    public void finishConnect() throws IOException {
+        if (!channel.finishConnect()) return;
+        key.interestOps(SelectionKey.OP_READ);
+        connected();
+    }
+
+    private void connected() {
+        //socket is up, register with the server
+        readBuffer.clear();
+
+        outbound.setWriter(new ConnectionWriter());
+        send("NICK " + server.getNick());
+        send("USER " + server.getNick() + " " + server.getNick() + " " + server.getNick() + " :MSDLBot");
+        send("PASS " + server.getIdent());
+    }
+
+    public void read(IrcTransport.LineHandler handler) throws IOException {
+        //read what's available and hand off every complete line
+
+        if (channel.read(readBuffer) == -1) {
+            throw new ClosedChannelException();
+        }
+
+        readBuffer.flip();
+        byte[] bytes = readBuffer.array();
+        int start = readBuffer.position();
+        for (int i=start; i<readBuffer.limit(); i++) {
+            if (bytes[i] != '\n') continue;
+            int end = (i > start && bytes[i - 1] == '\r') ? i - 1 : i;
+            handleLine(new String(bytes, start, end - start, StandardCharsets.UTF_8), handler);
+            start = i + 1;
+        }
+        readBuffer.position(start);
+        readBuffer.compact();
+
+        //a line longer than the buffer is junk, drop it
+        if (!readBuffer.hasRemaining()) {
+            readBuffer.clear();
+        }
+    }
+
+    private void handleLine(String line, IrcTransport.LineHandler handler) {
+
+        //respond to ping
+        if (line.startsWith("PING")) {
+            send("PONG " + line.substring(5));
+            return;
+        }
+
+        if (!registered) {
+            System.out.println("***CONNECTING***:" + line);
+
+            //nickname already in use
+            if (line.contains(" 433 ")) {
+                FileLogger.logWarning("Nickname already in use! " + server.getServer());
+                close();
+                return;
+            }
+
+            //connected
+            if (line.contains(" 004 ")) {
+                FileLogger.logInfo("Connected successfully: " + server.getServer());
+                registered = true;
+                joinChannels();
+            }
+            return;
+        }
+
+        handler.handleLine(this, line);
+    }
+
+    private void joinChannels() {
+        for (String chan : server.getChannels()) {
+            send("JOIN :" + chan);
+        }
+        //show version for confirmation
+        FileLogger.logInfo("VERSIONINFO - " + versionInfo);
+        outbound.enqueue(OutboundQueue.Lane.REPLY, OPER_CHAN, "PRIVMSG " + OPER_CHAN + " :" + versionInfo);
+    }
+
+    public void write() throws IOException {
+        //selector thread, socket is writable
+
+        synchronized (writeQueue) {
+            while (!writeQueue.isEmpty()) {
+                ByteBuffer buffer = writeQueue.peek();
+                channel.write(buffer);
+                if (buffer.hasRemaining()) return;
+                writeQueue.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            writeQueue.notifyAll();
+        }
+    }
+
+    public void awaitWritten(long millis) {
+        //wait for the selector thread to write out everything handed to
+        //the socket, e.g. before shutting down; gives up if it's closed
+
+        long deadline = System.currentTimeMillis() + millis;
+        long remaining;
+        synchronized (writeQueue) {
+            while (!writeQueue.isEmpty() && key != null && key.isValid()
+                    && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    writeQueue.wait(remaining);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void queueWrite(ByteBuffer buffer) {
+        //outbound queue thread, wake the selector to write it out
+
+        synchronized (writeQueue) {
+            if (key == null || !key.isValid()) return;
+            writeQueue.add(buffer);
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+        selector.wakeup();
+    }
+
+    public void send(String msg) {
+        outbound.enqueue(OutboundQueue.Lane.SERVER, "", msg);
+    }
+
+    public void say(String msg, String chan, OutboundQueue.Lane lane) {
+        outbound.enqueue(lane, chan, "PRIVMSG " + chan + " :" + msg);
+    }
+
+    public void close() {
+        //drop the connection, the transport reconnects after a delay
+
+        synchronized (writeQueue) {
+            if (key != null) key.cancel();
+            writeQueue.clear();
+            writeQueue.notifyAll();
+        }
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            System.out.println("Error closing socket. " + e.getMessage());
+        }
+        registered = false;
+        reconnectAt = System.currentTimeMillis() + RECONNECT_DELAY;
+
+        //closed from a command thread, the selector may be asleep with no timeout
+        if (selector != null) selector.wakeup();
+    }
+
+    public boolean isOpen() {
+        return channel != null && channel.isOpen();
+    }
+
+    public long getReconnectAt() {
+        return reconnectAt;
+    }
+
+    public ServerConfig getServer() {
+        return server;
+    }
+
+    public OutboundQueue getOutbound() {
+        return outbound;
+    }
+
+    private class ConnectionWriter extends Writer {
+        //collects a batch from the outbound queue, hands it over on flush
+
+        private StringBuilder pending = new StringBuilder();
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            pending.append(buffer, offset, length);
+        }
+
+        @Override
+        public void write(String str) {
+            pending.append(str);
+        }
+
+        @Override
+        public void flush() {
+            if (pending.length() == 0) return;
+            queueWrite(ByteBuffer.wrap(pending.toString().getBytes(StandardCharsets.UTF_8)));
+            pending.setLength(0);
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,86 @@
+package streambot;
+
+/**
+ * 
+ * one line received from the irc server, parsed by offset
+ * [':' prefix ' '] command [' ' params] [' :' trailing]
+ * nothing is split or copied until a part is actually asked for
+ */
+
+public class IrcMessage {
+
+    private String line = "";
+
+    private int prefixEnd = -1;
+    private int commandStart = 0;
+    private int commandEnd = 0;
+    private int trailingStart = -1;
+
+    public IrcMessage(String line) {
+        this.line = line;
+
+        int pos = 0;
+        if (line.startsWith(":")) {
+            prefixEnd = line.indexOf(' ');
+            if (prefixEnd == -1) prefixEnd = line.length();
+            pos = prefixEnd + 1;
+        }
+
+        commandStart = Math.min(pos, line.length());
+        commandEnd = line.indexOf(' ', commandStart);
+        if (commandEnd == -1) {
+            commandEnd = line.length();
+            return;
+        }
+
+        int trailing = line.indexOf(" :", commandEnd);
+        if (trailing != -1) trailingStart = trailing + 2;
+    }
+
+    public boolean isCommand(String command) {
+        return commandEnd - commandStart == command.length()
+                && line.regionMatches(commandStart, command, 0, command.length());
+    }
+
+    public String getNick() {
+        //nick part of ":nick!user@host", lowercased
+
+        if (prefixEnd == -1) return "";
+        int end = line.indexOf('!', 1);
+        if (end == -1 || end > prefixEnd) end = prefixEnd;
+        return line.substring(1, end).toLowerCase();
+    }
+
+    public String getParam(int index) {
+        //middle params between the command and the trailing part
+
+        int end = trailingStart == -1 ? line.length() : trailingStart - 2;
+        int start = commandEnd;
+        for (int i=0; i<=index; i++) {
+            if (start >= end) return "";
+            start++;
+            int next = line.indexOf(' ', start);
+            if (next == -1 || next > end) next = end;
+            if (i == index) return line.substring(start, next);
+            start = next;
+        }
+        return "";
+    }
+
+    public boolean hasTrailing() {
+        return trailingStart != -1;
+    }
+
+    public char trailingCharAt(int index) {
+        int pos = trailingStart + index;
+        return (trailingStart == -1 || pos >= line.length()) ? 0 : line.charAt(pos);
+    }
+
+    public String getTrailing() {
+        return trailingStart == -1 ? "" : line.substring(trailingStart);
+    }
+
+    public String getLine() {
+        return line;
+    }
+}
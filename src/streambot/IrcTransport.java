@@ -0,0 +1,110 @@
+package streambot;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * 
+ * selector loop driving every IrcConnection from a single thread
+ * - connects, reads and writes all servers without blocking
+ * - reconnects dropped connections once their delay has passed
+ */
+
+public class IrcTransport {
+
+    public interface LineHandler {
+        void handleLine(IrcConnection connection, String line);
+    }
+
+    private Selector selector;
+    private ArrayList<IrcConnection> connections = new ArrayList<>();
+    private volatile boolean isRunning = false;
+
+    public IrcTransport() throws IOException {
+        selector = Selector.open();
+    }
+
+    public void addConnection(IrcConnection connection) {
+        connections.add(connection);
+    }
+
+    public ArrayList<IrcConnection> getConnections() {
+        return connections;
+    }
+
+    public void run(LineHandler handler) {
+        //****************************
+        //*****  MAIN LOOP HERE  *****
+        //****************************
+
+        isRunning = true;
+        for (IrcConnection connection : connections) {
+            connection.connect(selector);
+        }
+
+        while (isRunning) {
+            try {
+                selector.select(reconnectDue());
+            } catch (IOException e) {
+                System.out.println("Selector error " + e.getMessage());
+                continue;
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                IrcConnection connection = (IrcConnection) key.attachment();
+                try {
+                    if (!key.isValid()) continue;
+                    if (key.isConnectable()) connection.finishConnect();
+                    if (key.isValid() && key.isReadable()) connection.read(handler);
+                    if (key.isValid() && key.isWritable()) connection.write();
+                } catch (IOException e) {
+
+                    //********* RECONNECT ***********
+                    //connection dropped, keep bot running and retry later
+                    System.out.println("Disconnected from server " + connection.getServer().getServer());
+                    FileLogger.logInfo("Disconnected from server, attempting reconnect " + e.getMessage());
+                    connection.close();
+                } catch (Exception e) {
+
+                    //catch remaining exceptions that might occur from user commands
+                    //(aka input validation that i forgot to account for)
+                    System.out.println("Unexpected error occured: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private long reconnectDue() {
+        //reconnect anything whose delay is up, and return how long
+        //the selector can sleep until the next one is due (0 = forever)
+
+        long now = System.currentTimeMillis();
+        long next = 0;
+        for (IrcConnection connection : connections) {
+            if (connection.isOpen()) continue;
+            long wait = connection.getReconnectAt() - now;
+            if (wait <= 0) {
+                connection.connect(selector);
+            } else if (next == 0 || wait < next) {
+                next = wait;
+            }
+        }
+        return next;
+    }
+
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    public void stop() {
+        isRunning = false;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,283 @@
+package streambot;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * 
+ * minimal pull parser for reading api responses straight off the wire
+ * - the caller walks the document token by token and only the values it
+ *   asks for are turned into Strings; everything else is skipped in place
+ * - keys can be matched against the names the caller wants without
+ *   being turned into Strings either
+ * - lenient: ',' and ':' are treated as separators, which is plenty
+ *   for the well-formed json twitch sends back
+ */
+
+public class JsonPullParser {
+
+    public enum Token {
+        BEGIN_OBJECT,
+        END_OBJECT,
+        BEGIN_ARRAY,
+        END_ARRAY,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL,
+        END_DOCUMENT
+    }
+
+    private Reader reader;
+    private char[] buffer = new char[8192];
+    private int pos = 0;
+    private int limit = 0;
+
+    //reused for keys matched by nextName(String[])
+    private char[] nameBuffer = new char[32];
+
+    public JsonPullParser(Reader reader) {
+        this.reader = reader;
+    }
+
+    public Token peek() throws IOException {
+        int c = peekChar();
+        switch (c) {
+        case -1: return Token.END_DOCUMENT;
+        case '{': return Token.BEGIN_OBJECT;
+        case '}': return Token.END_OBJECT;
+        case '[': return Token.BEGIN_ARRAY;
+        case ']': return Token.END_ARRAY;
+        case '"': return Token.STRING;
+        case 't':
+        case 'f': return Token.BOOLEAN;
+        case 'n': return Token.NULL;
+        default: return Token.NUMBER;
+        }
+    }
+
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException {
+        expect('{');
+    }
+
+    public void endObject() throws IOException {
+        expect('}');
+    }
+
+    public void beginArray() throws IOException {
+        expect('[');
+    }
+
+    public void endArray() throws IOException {
+        expect(']');
+    }
+
+    public String nextName() throws IOException {
+        return nextString();
+    }
+
+    public int nextName(String[] names) throws IOException {
+        //index of the next key in names, -1 if it's none of them
+
+        expect('"');
+        int length = 0;
+        while (true) {
+            if (pos == limit && !fill()) throw new IOException("Unterminated string");
+            char c = buffer[pos++];
+            if (c == '"') break;
+            if (c == '\\') c = readEscape();
+            if (length == nameBuffer.length) {
+                nameBuffer = Arrays.copyOf(nameBuffer, length * 2);
+            }
+            nameBuffer[length++] = c;
+        }
+
+        for (int i=0; i<names.length; i++) {
+            if (names[i].length() == length && matchesName(names[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matchesName(String name) {
+        for (int i=0; i<name.length(); i++) {
+            if (nameBuffer[i] != name.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    public String nextString() throws IOException {
+        expect('"');
+        StringBuilder builder = new StringBuilder();
+        while (true) {
+            //copy runs of plain chars in one go
+            int start = pos;
+            while (pos < limit && buffer[pos] != '"' && buffer[pos] != '\\') pos++;
+            builder.append(buffer, start, pos - start);
+            if (pos == limit) {
+                if (!fill()) throw new IOException("Unterminated string");
+                continue;
+            }
+            if (buffer[pos++] == '"') return builder.toString();
+            builder.append(readEscape());
+        }
+    }
+
+    public String nextStringOrEmpty() throws IOException {
+        //strings that twitch sends as null when unset (title, game)
+
+        if (peek() == Token.NULL) {
+            skipLiteral();
+            return "";
+        }
+        return nextString();
+    }
+
+    public long nextLong() throws IOException {
+        peekChar();
+        StringBuilder builder = new StringBuilder();
+        int c;
+        while ((c = currentChar()) != -1 && isNumberChar((char) c)) {
+            builder.append((char) c);
+            pos++;
+        }
+        try {
+            return (long) Double.parseDouble(builder.toString());
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad number " + builder);
+        }
+    }
+
+    public int nextInt() throws IOException {
+        return (int) nextLong();
+    }
+
+    public void skipValue() throws IOException {
+        //skip the next value, including any nested objects/arrays
+
+        int depth = 0;
+        do {
+            switch (peek()) {
+            case BEGIN_OBJECT:
+            case BEGIN_ARRAY:
+                pos++;
+                depth++;
+                break;
+            case END_OBJECT:
+            case END_ARRAY:
+                pos++;
+                depth--;
+                break;
+            case STRING:
+                skipString();
+                break;
+            case NUMBER:
+            case BOOLEAN:
+            case NULL:
+                skipLiteral();
+                break;
+            case END_DOCUMENT:
+                throw new IOException("Unexpected end of document");
+            }
+        } while (depth > 0);
+    }
+
+    private void skipString() throws IOException {
+        expect('"');
+        while (true) {
+            if (pos == limit && !fill()) throw new IOException("Unterminated string");
+            char c = buffer[pos++];
+            if (c == '"') return;
+            if (c == '\\') {
+                if (pos == limit && !fill()) throw new IOException("Unterminated string");
+                pos++;
+            }
+        }
+    }
+
+    private void skipLiteral() throws IOException {
+        //anything that isn't a literal here is malformed, and skipping
+        //nothing would leave skipValue() looping on it forever
+
+        int c = peekChar();
+        if (c == -1) {
+            throw new IOException("Unexpected end of document");
+        }
+        if (!Character.isLetter(c) && !isNumberChar((char) c)) {
+            throw new IOException("Unexpected character '" + (char) c + "'");
+        }
+        while ((c = currentChar()) != -1 && (Character.isLetter(c) || isNumberChar((char) c))) {
+            pos++;
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = nextRawChar();
+        switch (c) {
+        case 'n': return '\n';
+        case 't': return '\t';
+        case 'r': return '\r';
+        case 'b': return '\b';
+        case 'f': return '\f';
+        case 'u':
+            int value = 0;
+            for (int i=0; i<4; i++) {
+                int digit = Character.digit(nextRawChar(), 16);
+                if (digit < 0) throw new IOException("Bad unicode escape");
+                value = (value << 4) | digit;
+            }
+            return (char) value;
+        case -1: throw new IOException("Unterminated escape");
+        default: return (char) c;
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        if (peekChar() != expected) {
+            throw new IOException("Expected '" + expected + "' but found '" + (char) peekChar() + "'");
+        }
+        pos++;
+    }
+
+    private int peekChar() throws IOException {
+        //skip whitespace and separators, return next char without consuming it
+
+        while (true) {
+            int c = currentChar();
+            if (c == -1) return -1;
+            if (c == ',' || c == ':' || Character.isWhitespace(c)) {
+                pos++;
+            } else {
+                return c;
+            }
+        }
+    }
+
+    private int currentChar() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        return buffer[pos];
+    }
+
+    private int nextRawChar() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        return buffer[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        int read = reader.read(buffer, 0, buffer.length);
+        pos = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+    private static boolean isNumberChar(char c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+    }
+}
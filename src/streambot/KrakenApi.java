@@ -0,0 +1,82 @@
+package streambot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ *
+ * the legacy kraken api
+ * - streams are looked up by channel name, comma separated
+ * - pages are followed by offset until _total streams have been read
+ * - streams are polled by name, so a renamed stream has to be re-added
+ */
+
+public class KrakenApi implements StreamApi {
+
+    public static final String DEFAULT_BASE_URL = "https://api.twitch.tv/kraken";
+    public static final int MAX_BATCH = 100;
+
+    private static final String KRAKEN_V5 = "application/vnd.twitchtv.v5+json";
+    private static final int PAGE_SIZE = 100;
+
+    private String baseUrl;
+    private int batchSize;
+
+    public KrakenApi(String baseUrl, int batchSize) {
+        this.baseUrl = baseUrl;
+        this.batchSize = Math.min(MAX_BATCH, batchSize);
+    }
+
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public boolean pollsById() {
+        return false;
+    }
+
+    @Override
+    public ArrayList<LiveStream> getLiveStreams(ArrayList<String> names, RateBudget.Use use) throws IOException {
+        //parse each page as it arrives, there can't be more live streams than names
+
+        ArrayList<LiveStream> streams = new ArrayList<>();
+        String channels = String.join(",", names);
+        int offset = 0;
+        int total;
+        do {
+            String url = baseUrl + "/streams?channel=" + channels + "&limit=" + PAGE_SIZE + "&offset=" + offset;
+            try (InputStream body = ApiClient.getInstance().openStream(url, use)) {
+                total = StreamsParser.parse(body, streams);
+            }
+            offset += PAGE_SIZE;
+        } while (offset < total && offset < names.size());
+        return streams;
+    }
+
+    @Override
+    public ArrayList<TwitchUser> getUsers(ArrayList<String> names, RateBudget.Use use) throws IOException {
+        //users lookups need the v5 api
+
+        ArrayList<TwitchUser> found = new ArrayList<>();
+        String url = baseUrl + "/users?login=" + String.join(",", names);
+        try {
+            JSONObject json = new JSONObject(ApiClient.getInstance().get(url, use, KRAKEN_V5));
+            JSONArray users = json.getJSONArray("users");
+            for (int i=0; i<users.length(); i++) {
+                JSONObject user = users.getJSONObject(i);
+                String login = user.getString("name").toLowerCase();
+                found.add(new TwitchUser(user.getString("_id"), login, user.optString("display_name", login)));
+            }
+        } catch (JSONException e) {
+            throw new IOException("Bad users response " + e.getMessage());
+        }
+        return found;
+    }
+}
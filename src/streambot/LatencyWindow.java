@@ -0,0 +1,40 @@
+package streambot;
+
+import java.util.Arrays;
+
+/**
+ *
+ * keeps the most recent request latencies in a ring buffer
+ * - used to decide when a request is slow enough to hedge
+ * - percentiles are only given once there are enough samples
+ */
+
+public class LatencyWindow {
+
+    private static final int MIN_SAMPLES = 20;
+
+    private long[] samples;
+    private int next = 0;
+    private int count = 0;
+
+    public LatencyWindow(int size) {
+        samples = new long[size];
+    }
+
+    public synchronized void add(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    public synchronized long percentile(double p) {
+        //-1 until there are enough samples to go on
+
+        if (count < MIN_SAMPLES) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return sorted[Math.min(count - 1, (int) Math.ceil(p * count) - 1)];
+    }
+}
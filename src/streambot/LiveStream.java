@@ -0,0 +1,62 @@
+package streambot;
+
+/**
+ * 
+ * snapshot of a single live stream as returned by the twitch api
+ * only holds the fields the bot actually uses
+ */
+
+public class LiveStream {
+
+    private String name = "";
+    private String displayName = "";
+    private String status = "";
+    private String game = "";
+    private int viewers;
+
+    //twitch user id, empty if the api didn't send one
+    private String id = "";
+
+    public LiveStream(String name, String displayName, String status, String game, int viewers) {
+        this.name = name;
+        this.displayName = displayName;
+        this.status = status;
+        this.game = game;
+        this.viewers = viewers;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getGame() {
+        return game;
+    }
+
+    public int getViewers() {
+        return viewers;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public LiveStream renamed(String name) {
+        //same stream under the name it's watched as
+        LiveStream copy = new LiveStream(name, displayName, status, game, viewers);
+        copy.id = id;
+        return copy;
+    }
+}
@@ -0,0 +1,238 @@
+package streambot;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *
+ * remembers which twitch names exist, their user ids and display names
+ * - saved to data/names.txt, one "login id display_name resolved_at" per line;
+ *   new lookups are appended (a later line for a login wins), and the file
+ *   is only rewritten once superseded lines make up most of it
+ * - entries older than TTL are looked up again when a name is validated,
+ *   but their id is still used for polling, since ids never change
+ * - entries are stored by column like StreamStates, logins in a NameTable
+ *   and ids as longs, so caching every watched stream stays cheap
+ * - names that don't exist are kept in a small in-memory LRU for a while,
+ *   so repeated or mistyped adds don't hit the api every time
+ */
+
+public class NameCache {
+
+    private static NameCache instance;
+
+    private static final long TTL = 7 * 24 * 60 * 60 * 1000L;
+    private static final long INVALID_TTL = 60 * 60 * 1000L;
+    private static final int MAX_INVALID = 1000;
+    private static final int INITIAL_CAPACITY = 64;
+
+    //superseded lines allowed in names.txt before it's rewritten
+    private static final int COMPACT_SLACK = 1000;
+
+    private String cachePath = "";
+
+    //columns indexed by the login's id in the NameTable: the account's
+    //user id, its display name as a NameTable.caseMask, and when we last
+    //checked (StreamStates seconds)
+    private NameTable logins = new NameTable(INITIAL_CAPACITY);
+    private long[] userIds = new long[INITIAL_CAPACITY];
+    private int[] caseMasks = new int[INITIAL_CAPACITY];
+    private int[] resolvedAt = new int[INITIAL_CAPACITY];
+
+    //key = login id; value = display name that's more than a case change
+    private HashMap<Integer, String> otherDisplayNames = new HashMap<>();
+
+    //key = login that doesn't exist; value = when we found out
+    private LinkedHashMap<String, Long> invalid = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_INVALID;
+        }
+    };
+
+    //lines not written to names.txt yet, and how many lines it has
+    private StringBuilder pending = new StringBuilder();
+    private int fileLines = 0;
+
+    //saves from different threads have to append in order
+    private final Object writeLock = new Object();
+
+    public static synchronized NameCache getInstance() {
+        if (instance == null) {
+            instance = new NameCache();
+        }
+        return instance;
+    }
+
+    private NameCache() {
+        cachePath = Paths.get("data" + File.separator + "names.txt").toString();
+        load();
+    }
+
+    private void load() {
+        if (!new File(cachePath).exists()) return;
+        try (BufferedReader reader = new BufferedReader(new FileReader(cachePath, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                fileLines++;
+                String[] fields = line.split(" ");
+                if (fields.length != 4) continue;
+                try {
+                    put(fields[0], Long.parseLong(fields[1]), fields[2], Long.parseLong(fields[3]));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading name cache " + e.getMessage());
+        }
+    }
+
+    public synchronized TwitchUser getFresh(String login) {
+        //the cached account, unless it's due to be looked up again
+
+        int id = logins.getId(login);
+        if (id < 0 || System.currentTimeMillis() - StreamStates.toMillis(resolvedAt[id]) > TTL) {
+            return null;
+        }
+        return new TwitchUser(String.valueOf(userIds[id]), login, getDisplayName(id));
+    }
+
+    public synchronized String getId(String login) {
+        //ids don't change, so this ignores the TTL
+        int id = logins.getId(login);
+        return id < 0 ? null : String.valueOf(userIds[id]);
+    }
+
+    public synchronized boolean isKnownInvalid(String login) {
+        Long found = invalid.get(login);
+        if (found == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - found > INVALID_TTL) {
+            invalid.remove(login);
+            return false;
+        }
+        return true;
+    }
+
+    public synchronized void putUser(TwitchUser user) {
+        try {
+            put(user.getLogin(), Long.parseLong(user.getId()), user.getDisplayName(), System.currentTimeMillis());
+        } catch (NumberFormatException e) {
+            System.out.println("Not caching " + user.getLogin() + ", unexpected user id " + user.getId());
+            return;
+        }
+        invalid.remove(user.getLogin());
+        appendEntry(pending, logins.getId(user.getLogin()));
+    }
+
+    private void put(String login, long userId, String displayName, long resolved) {
+        int id = logins.add(login);
+        if (logins.getCapacity() > userIds.length) {
+            userIds = Arrays.copyOf(userIds, logins.getCapacity());
+            caseMasks = Arrays.copyOf(caseMasks, logins.getCapacity());
+            resolvedAt = Arrays.copyOf(resolvedAt, logins.getCapacity());
+        }
+        userIds[id] = userId;
+        int mask = NameTable.caseMask(login, displayName);
+        if (mask >= 0) {
+            caseMasks[id] = mask;
+            otherDisplayNames.remove(id);
+        } else {
+            caseMasks[id] = 0;
+            otherDisplayNames.put(id, displayName);
+        }
+        resolvedAt[id] = StreamStates.toSeconds(resolved);
+    }
+
+    private void appendEntry(StringBuilder builder, int id) {
+        builder.append(logins.getName(id)).append(' ')
+                .append(userIds[id]).append(' ')
+                .append(getDisplayName(id).replace(' ', '_')).append(' ')
+                .append(StreamStates.toMillis(resolvedAt[id]))
+                .append(System.getProperty("line.separator"));
+    }
+
+    private String getDisplayName(int id) {
+        String other = otherDisplayNames.isEmpty() ? null : otherDisplayNames.get(id);
+        return other != null ? other : NameTable.applyCase(logins.getName(id), caseMasks[id]);
+    }
+
+    public synchronized void putInvalid(String login) {
+        //a watched stream that was renamed keeps its id, so it's still polled
+        invalid.put(login, System.currentTimeMillis());
+    }
+
+    public void save() {
+        //append what was looked up since the last save, or rewrite the
+        //whole file if it's mostly superseded lines by now
+
+        synchronized (writeLock) {
+            String lines;
+            String appended;
+            int lineCount;
+            boolean rewrite;
+            synchronized (this) {
+                if (pending.length() == 0) return;
+                appended = pending.toString();
+                rewrite = fileLines > logins.size() * 2 + COMPACT_SLACK;
+                if (rewrite) {
+                    StringBuilder builder = new StringBuilder();
+                    for (int id = 0; id < logins.getIdLimit(); id++) {
+                        if (logins.isUsed(id)) appendEntry(builder, id);
+                    }
+                    lines = builder.toString();
+                    lineCount = logins.size();
+                } else {
+                    lines = appended;
+                    lineCount = fileLines + countLines(lines);
+                }
+                pending.setLength(0);
+            }
+
+            byte[] bytes = lines.getBytes(StandardCharsets.UTF_8);
+            boolean written;
+            if (rewrite) {
+                written = StreamFileHandler.writeAtomically(Paths.get(cachePath), bytes);
+            } else {
+                try {
+                    Files.write(Paths.get(cachePath), bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                    written = true;
+                } catch (IOException e) {
+                    System.out.println("Error saving name cache " + e.getMessage());
+                    written = false;
+                }
+            }
+
+            synchronized (this) {
+                if (written) {
+                    fileLines = lineCount;
+                } else {
+                    //the file wasn't changed, try these lines again next time
+                    pending.insert(0, appended);
+                }
+            }
+        }
+    }
+
+    private static int countLines(String lines) {
+        int count = 0;
+        for (int i=0; i<lines.length(); i++) {
+            if (lines.charAt(i) == '\n') count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,169 @@
+package streambot;
+
+import java.util.Arrays;
+
+/**
+ *
+ * maps names to small int ids, for stores that keep their data in
+ * per-id columns (StreamStates, NameCache)
+ * - ids are handed out densely and reused after a remove, so they
+ *   can index primitive arrays directly
+ * - open addressing over an int table, so there's no entry object
+ *   per name, just the name itself
+ * not thread safe, owners do their own locking
+ */
+
+public class NameTable {
+
+    private String[] names;
+    private int highWater = 0;
+    private int size = 0;
+    private int[] freeIds = new int[16];
+    private int freeCount = 0;
+
+    //linear probing, slots hold id + 1 (0 = empty)
+    private int[] table;
+
+    public NameTable(int capacity) {
+        names = new String[capacity];
+        table = new int[Integer.highestOneBit(Math.max(2, capacity) - 1) << 2];
+    }
+
+    public int add(String name) {
+        //id of the name, adding it if it isn't there yet
+
+        int slot = findSlot(name);
+        if (table[slot] != 0) {
+            return table[slot] - 1;
+        }
+
+        int id = freeCount > 0 ? freeIds[--freeCount] : highWater++;
+        if (id >= names.length) {
+            names = Arrays.copyOf(names, names.length * 2);
+        }
+        names[id] = name;
+        size++;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        } else {
+            table[slot] = id + 1;
+        }
+        return id;
+    }
+
+    public int remove(String name) {
+        //id the name had, -1 if it wasn't there
+
+        int slot = findSlot(name);
+        if (table[slot] == 0) return -1;
+        int id = table[slot] - 1;
+
+        deleteSlot(slot);
+        names[id] = null;
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+        }
+        freeIds[freeCount++] = id;
+        size--;
+        return id;
+    }
+
+    public int getId(String name) {
+        //-1 if the name isn't there
+        return table[findSlot(name)] - 1;
+    }
+
+    public String getName(int id) {
+        return names[id];
+    }
+
+    public boolean isUsed(int id) {
+        return names[id] != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getIdLimit() {
+        //every id in use is below this, check isUsed when iterating
+        return highWater;
+    }
+
+    public int getCapacity() {
+        //owners keep their columns at least this long
+        return names.length;
+    }
+
+    private int findSlot(String name) {
+        //slot holding the name, or the empty slot where it would go
+
+        int mask = table.length - 1;
+        int slot = mix(name.hashCode()) & mask;
+        while (table[slot] != 0 && !names[table[slot] - 1].equals(name)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insert(int id) {
+        table[findSlot(names[id])] = id + 1;
+    }
+
+    private void deleteSlot(int slot) {
+        //shift later entries of the probe run back, so no tombstones are needed
+
+        int mask = table.length - 1;
+        table[slot] = 0;
+        int next = (slot + 1) & mask;
+        while (table[next] != 0) {
+            int id = table[next] - 1;
+            table[next] = 0;
+            insert(id);
+            next = (next + 1) & mask;
+        }
+    }
+
+    private void rehash(int tableSize) {
+        table = new int[tableSize];
+        for (int id = 0; id < highWater; id++) {
+            if (names[id] != null) {
+                insert(id);
+            }
+        }
+    }
+
+    public static int caseMask(String name, String displayName) {
+        //bit n set = letter n of the display name is uppercase, -1 if the
+        //display name isn't just the name with some letters capitalized
+
+        if (displayName == null || displayName.equals(name)) return 0;
+        if (displayName.length() != name.length() || name.length() > 31) return -1;
+        int mask = 0;
+        for (int i=0; i<name.length(); i++) {
+            char c = name.charAt(i);
+            char d = displayName.charAt(i);
+            if (c == d) continue;
+            if (d != Character.toUpperCase(c)) return -1;
+            mask |= 1 << i;
+        }
+        return mask;
+    }
+
+    public static String applyCase(String name, int mask) {
+        //the display name caseMask was taken from
+
+        if (mask == 0) return name;
+        char[] chars = name.toCharArray();
+        for (int i=0; i<chars.length; i++) {
+            if ((mask & (1 << i)) != 0) chars[i] = Character.toUpperCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static int mix(int hash) {
+        //spread the bits, names often share long prefixes
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+}
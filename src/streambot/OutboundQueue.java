@@ -0,0 +1,159 @@
+package streambot;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 
+ * single writer thread for everything the bot sends to the irc server
+ * - lines are queued per priority lane, and per target channel within
+ *   a lane so one busy channel can't hog the connection
+ * - a token bucket paces sends to stay under the server's flood limit
+ * - lines that are ready together are written with a single flush
+ * callers never block on pacing, they just enqueue and return
+ */
+
+public class OutboundQueue implements Runnable {
+
+    //lanes in order of priority
+    public enum Lane {
+        SERVER,     //registration, JOIN, PING/PONG
+        REPLY,      //replies to user commands
+        BULK        //stream announcements
+    }
+
+    private LinkedHashMap<String, ArrayDeque<String>>[] lanes;
+    private int queued = 0;
+    private boolean sending = false;
+
+    //token bucket, one token per line
+    private double tokens;
+    private int burst;
+    private long refillMillis;
+    private long lastRefill;
+
+    private Writer out;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public OutboundQueue(int burst, long refillMillis) {
+        this.burst = burst;
+        this.refillMillis = refillMillis;
+        this.tokens = burst;
+        this.lastRefill = System.currentTimeMillis();
+
+        lanes = new LinkedHashMap[Lane.values().length];
+        for (int i=0; i<lanes.length; i++) {
+            lanes[i] = new LinkedHashMap<>();
+        }
+
+        Thread writer = new Thread(this, "outbound-queue");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public synchronized void setWriter(Writer out) {
+        //new connection, anything still queued was meant for the old one
+
+        this.out = out;
+        for (LinkedHashMap<String, ArrayDeque<String>> lane : lanes) {
+            lane.clear();
+        }
+        queued = 0;
+        notifyAll();
+    }
+
+    public synchronized void enqueue(Lane lane, String target, String line) {
+        lanes[lane.ordinal()].computeIfAbsent(target, t -> new ArrayDeque<>()).add(line);
+        queued++;
+        notifyAll();
+    }
+
+    public synchronized void awaitEmpty(long millis) {
+        //give queued lines a chance to go out, e.g. before shutting down
+
+        long deadline = System.currentTimeMillis() + millis;
+        long remaining;
+        while ((queued > 0 || sending) && (remaining = deadline - System.currentTimeMillis()) > 0) {
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        StringBuilder batch = new StringBuilder();
+        while (true) {
+            Writer writer;
+            synchronized (this) {
+                try {
+                    while (queued == 0 || out == null || !refill()) {
+                        wait(queued == 0 || out == null ? 0 : untilNextToken());
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                //take as many lines as there are tokens for
+                batch.setLength(0);
+                while (queued > 0 && tokens >= 1) {
+                    batch.append(poll()).append("\r\n");
+                    tokens--;
+                }
+                writer = out;
+                sending = true;
+            }
+
+            try {
+                writer.write(batch.toString());
+                writer.flush();
+            } catch (IOException e) {
+                System.out.println("Error sending to server " + e.getMessage());
+            }
+
+            synchronized (this) {
+                sending = false;
+                notifyAll();
+            }
+        }
+    }
+
+    private String poll() {
+        //next line from the highest priority lane,
+        //rotating between targets within the lane
+
+        for (LinkedHashMap<String, ArrayDeque<String>> lane : lanes) {
+            Iterator<Map.Entry<String, ArrayDeque<String>>> it = lane.entrySet().iterator();
+            if (!it.hasNext()) continue;
+
+            Map.Entry<String, ArrayDeque<String>> entry = it.next();
+            String line = entry.getValue().poll();
+            it.remove();
+            if (!entry.getValue().isEmpty()) {
+                lane.put(entry.getKey(), entry.getValue());
+            }
+            queued--;
+            return line;
+        }
+        return null;
+    }
+
+    private boolean refill() {
+        //top up the bucket, true if a whole token is available
+
+        long now = System.currentTimeMillis();
+        tokens = Math.min(burst, tokens + (double) (now - lastRefill) / refillMillis);
+        lastRefill = now;
+        return tokens >= 1;
+    }
+
+    private long untilNextToken() {
+        return Math.max(1, (long) Math.ceil((1 - tokens) * refillMillis));
+    }
+}
@@ -0,0 +1,35 @@
+package streambot;
+
+import java.util.HashMap;
+
+/**
+ * 
+ * cycle-wide view of one poll of the twitch api
+ * merges the live streams of every chunk into a single map
+ * and remembers whether every chunk came back, since a missing
+ * chunk would otherwise make its streams look offline
+ */
+
+public class PollResult {
+
+    //key = twitch channel name; value = stream as reported by the api
+    private HashMap<String, LiveStream> liveStreams = new HashMap<>();
+
+    private boolean complete = true;
+
+    public synchronized void addStream(LiveStream stream) {
+        liveStreams.put(stream.getName(), stream);
+    }
+
+    public synchronized void markIncomplete() {
+        complete = false;
+    }
+
+    public HashMap<String, LiveStream> getLiveStreams() {
+        return liveStreams;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+}
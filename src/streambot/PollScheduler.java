@@ -0,0 +1,101 @@
+package streambot;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 
+ * runs the keepalive and the stream poller on separate timers
+ * - keepalive fires at a fixed rate, no matter how long a poll takes
+ * - the next poll is only scheduled once the current one finishes,
+ *   so cycles never overlap; its delay is the base interval minus the
+ *   time the cycle took, plus some random jitter
+ * - failed cycles back off exponentially, up to a maximum
+ */
+
+public class PollScheduler {
+
+    private static final long KEEPALIVE_INTERVAL = 60000;
+
+    private ScheduledExecutorService keepAliveTimer;
+    private ScheduledExecutorService pollTimer;
+
+    private StreamManager streamManager;
+    private Runnable keepAlive;
+
+    private long interval;
+    private long jitter;
+    private long maxBackoff;
+    private int failures = 0;
+
+    public PollScheduler(StreamManager streamManager, Runnable keepAlive, long interval, long jitter, long maxBackoff) {
+        this.streamManager = streamManager;
+        this.keepAlive = keepAlive;
+        this.interval = interval;
+        this.jitter = jitter;
+        this.maxBackoff = maxBackoff;
+
+        keepAliveTimer = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "keepalive"));
+        pollTimer = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "poll-scheduler"));
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    public void start() {
+        keepAliveTimer.scheduleAtFixedRate(this::runKeepAlive, KEEPALIVE_INTERVAL, KEEPALIVE_INTERVAL, TimeUnit.MILLISECONDS);
+        schedulePoll(interval);
+    }
+
+    private void runKeepAlive() {
+        try {
+            keepAlive.run();
+        } catch (Exception e) {
+            System.out.println("Error sending keepalive " + e.getMessage());
+        }
+    }
+
+    private void schedulePoll(long delay) {
+        pollTimer.schedule(this::runPoll, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void runPoll() {
+        long start = System.currentTimeMillis();
+        boolean ok;
+        try {
+            ok = streamManager.checkForUpdates();
+        } catch (Exception e) {
+            System.out.println("Unexpected error polling streams: " + e.getMessage());
+            e.printStackTrace();
+            ok = false;
+        }
+        long cycleTime = System.currentTimeMillis() - start;
+        schedulePoll(nextDelay(ok, cycleTime));
+    }
+
+    private long nextDelay(boolean ok, long cycleTime) {
+        if (!ok) {
+            //back off: interval * 2^failures, capped
+            failures++;
+            long backoff = interval << Math.min(failures, 20);
+            long delay = Math.min(maxBackoff, backoff);
+            System.out.println("Poll failed " + failures + " times in a row, next poll in " + (delay / 1000) + "s");
+            return delay + randomJitter();
+        }
+
+        failures = 0;
+        if (cycleTime > interval) {
+            FileLogger.logWarning("Poll cycle took " + cycleTime + "ms, longer than the " + interval + "ms interval");
+        }
+        return Math.max(0, interval - cycleTime) + randomJitter();
+    }
+
+    private long randomJitter() {
+        return jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0;
+    }
+}
@@ -0,0 +1,64 @@
+package streambot;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ *
+ * decides which streams are polled each cycle, from their recent history
+ * - HOT: live, or live within the last HOT_WINDOW; polled every cycle
+ * - WARM: live within the last WARM_WINDOW; polled every warm interval
+ * - COLD: not seen live recently (or ever); polled every cold interval
+ * warm and cold streams get a random head start on their next poll,
+ * so the long tail is spread over several cycles instead of all at once
+ */
+
+public class PollTiers {
+
+    public enum Tier {HOT, WARM, COLD}
+
+    //streams that just went offline often come right back
+    private static final long HOT_WINDOW = 30 * 60 * 1000L;
+
+    //streams that were live in the last few days are likely to be live again soon
+    private static final long WARM_WINDOW = 72 * 60 * 60 * 1000L;
+
+    private long warmInterval;
+    private long coldInterval;
+
+    public PollTiers(long warmInterval, long coldInterval) {
+        this.warmInterval = warmInterval;
+        this.coldInterval = coldInterval;
+    }
+
+    public Tier classify(StreamStates states, int id, long now) {
+        long lastSeen = states.getLastSeen(id);
+        if (states.isLive(id) || (lastSeen > 0 && now - lastSeen < HOT_WINDOW)) {
+            return Tier.HOT;
+        }
+        if (lastSeen > 0 && now - lastSeen < WARM_WINDOW) {
+            return Tier.WARM;
+        }
+        return Tier.COLD;
+    }
+
+    public boolean isDue(StreamStates states, int id, long now) {
+        //hot streams are polled every cycle, new streams are due right away
+        return classify(states, id, now) == Tier.HOT || now >= states.getNextPoll(id);
+    }
+
+    public void polled(StreamStates states, int id, long now) {
+        long interval;
+        switch (classify(states, id, now)) {
+            case WARM:
+                interval = warmInterval;
+                break;
+            case COLD:
+                interval = coldInterval;
+                break;
+            default:
+                states.setNextPoll(id, now);
+                return;
+        }
+        states.setNextPoll(id, now + interval - ThreadLocalRandom.current().nextLong(interval / 2 + 1));
+    }
+}
@@ -0,0 +1,145 @@
+package streambot;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+
+/**
+ *
+ * one request budget shared by everything that calls the twitch api
+ * - kept in sync from the Ratelimit-* headers on every response, and
+ *   counted down locally in between (or on its own if there are none)
+ * - the poller can't spend the command reserve and commands can't spend
+ *   the poll reserve, so neither can starve the other
+ * - when the budget runs low, requests are spread over the rest of the
+ *   window instead of running into the limit
+ */
+
+public class RateBudget {
+
+    public enum Use {
+        POLL,       //stream polling
+        COMMAND     //lookups made for user commands
+    }
+
+    private static RateBudget instance;
+
+    //length of a rate limit window when the api doesn't tell us
+    private static final long WINDOW = 60000;
+
+    //below this share of the limit, requests are paced out
+    private static final double PACE_FRACTION = 0.25;
+
+    //longest each use waits for the budget, polls can wait out a whole window
+    private static final long POLL_WAIT = WINDOW + 5000;
+    private static final long COMMAND_WAIT = 10000;
+
+    private int limit;
+    private int remaining;
+    private long resetAt = 0;
+    private long nextGrant = 0;
+
+    private int pollReserve;
+    private int commandReserve;
+
+    public static synchronized RateBudget getInstance() throws IOException {
+        if (instance == null) {
+            BotConfig config = BotConfig.getInstance();
+            instance = new RateBudget(config.getRateLimit(), config.getPollReserve(), config.getCommandReserve());
+        }
+        return instance;
+    }
+
+    private RateBudget(int limit, int pollReserve, int commandReserve) {
+        this.limit = limit;
+        this.remaining = limit;
+        this.pollReserve = pollReserve;
+        this.commandReserve = commandReserve;
+    }
+
+    public boolean acquire(Use use) {
+        return acquire(use, use == Use.POLL ? POLL_WAIT : COMMAND_WAIT);
+    }
+
+    public synchronized boolean acquire(Use use, long maxWait) {
+        //take one request from the budget, waiting for pacing or the
+        //next window if needed; false if that would take over maxWait
+
+        if (!awaitSpare(use, maxWait)) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        int spare = remaining - floor(use);
+        remaining--;
+        nextGrant = spare < limit * PACE_FRACTION ? now + (resetAt - now) / spare : now;
+        return true;
+    }
+
+    public synchronized boolean awaitSpare(Use use, long maxWait) {
+        //wait until a request could be granted, without taking it
+
+        long deadline = System.currentTimeMillis() + maxWait;
+        while (true) {
+            long now = System.currentTimeMillis();
+            long wait = untilGrant(use, now);
+            if (wait <= 0) {
+                return true;
+            }
+            if (now + wait > deadline) {
+                return false;
+            }
+            try {
+                wait(Math.max(1, wait));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    private long untilGrant(Use use, long now) {
+        if (now >= resetAt) {
+            //new window, the next response will correct this if it's wrong
+            remaining = limit;
+            resetAt = now + WINDOW;
+        }
+
+        int spare = remaining - floor(use);
+        if (spare <= 0) {
+            return resetAt - now;
+        }
+        return spare < limit * PACE_FRACTION ? nextGrant - now : 0;
+    }
+
+    private int floor(Use use) {
+        //each use can't spend what's reserved for the other
+        return use == Use.POLL ? commandReserve : pollReserve;
+    }
+
+    public synchronized void update(HttpHeaders headers) {
+        //Ratelimit-Limit, Ratelimit-Remaining and Ratelimit-Reset (epoch seconds)
+
+        long headerLimit = headers.firstValueAsLong("Ratelimit-Limit").orElse(-1);
+        long headerRemaining = headers.firstValueAsLong("Ratelimit-Remaining").orElse(-1);
+        long headerReset = headers.firstValueAsLong("Ratelimit-Reset").orElse(-1) * 1000;
+        if (headerLimit <= 0 || headerRemaining < 0 || headerReset <= 0) return;
+
+        limit = (int) headerLimit;
+        if (headerReset > resetAt) {
+            resetAt = headerReset;
+            remaining = (int) headerRemaining;
+        } else {
+            //responses can arrive out of order, keep the lower count
+            remaining = Math.min(remaining, (int) headerRemaining);
+        }
+        notifyAll();
+    }
+
+    public synchronized void exhausted(HttpHeaders headers) {
+        //got a 429, nothing more until the window resets
+
+        long headerReset = headers.firstValueAsLong("Ratelimit-Reset").orElse(-1) * 1000;
+        remaining = 0;
+        resetAt = headerReset > 0 ? headerReset : System.currentTimeMillis() + WINDOW;
+        FileLogger.logWarning("Twitch api rate limit hit, waiting " + (resetAt - System.currentTimeMillis()) + "ms");
+    }
+}
@@ -0,0 +1,18 @@
+package streambot;
+
+import java.io.IOException;
+
+/**
+ *
+ * thrown for a 429 response, so callers can wait for
+ * the rate limit window to reset and try again
+ */
+
+public class RateLimitedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RateLimitedException(String message) {
+        super(message);
+    }
+}
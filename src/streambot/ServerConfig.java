@@ -0,0 +1,53 @@
+package streambot;
+
+import java.util.ArrayList;
+
+/**
+ * 
+ * connection settings for one irc server/network
+ * and the channels the bot joins there
+ */
+
+public class ServerConfig {
+
+    private String name = "";
+    private String server = "";
+    private int port = -1;
+    private String nick = "";
+    private String ident = "";
+
+    private ArrayList<String> channels = new ArrayList<>();
+
+    public ServerConfig(String name, String server, int port, String nick, String ident, ArrayList<String> channels) {
+        this.name = name;
+        this.server = server;
+        this.port = port;
+        this.nick = nick;
+        this.ident = ident;
+        this.channels = channels;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getServer() {
+        return server;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getNick() {
+        return nick;
+    }
+
+    public String getIdent() {
+        return ident;
+    }
+
+    public ArrayList<String> getChannels() {
+        return channels;
+    }
+}
@@ -0,0 +1,141 @@
+package streambot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 
+ * compact binary snapshot of every stream's runtime state
+ * (live, title hash, game, display name, offline checks, last seen) so a restart
+ * picks up where it left off instead of announcing every live stream again
+ * 
+ * layout: magic, version, saved-at, count, then per stream:
+ * name, live flag, title hash, game, display name (-1 length = same as name),
+ * offline checks, last seen
+ * strings are an int byte length followed by utf-8 bytes
+ * version 1 snapshots (full status string instead of flag + hash) still load
+ */
+
+public class StateSnapshot {
+
+    private static final int MAGIC = 0x53424f54; //"SBOT"
+    private static final int VERSION = 2;
+
+    private Path snapshotPath;
+
+    public StateSnapshot() {
+        snapshotPath = Paths.get("data" + File.separator + "state.bin");
+    }
+
+    public static byte[] encode(StreamStates states) {
+        //called under the manager's lock, the write happens outside it
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + states.size() * 40);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(states.size());
+            for (int id = 0; id < states.getIdLimit(); id++) {
+                if (!states.isUsed(id)) continue;
+                String name = states.getName(id);
+                String displayName = states.getDisplayName(id);
+                writeString(out, name);
+                out.writeByte(states.isLive(id) ? 1 : 0);
+                out.writeInt(states.getTitleHash(id));
+                writeString(out, states.getGame(id));
+                writeString(out, displayName.equals(name) ? null : displayName);
+                out.writeByte(states.getOfflineChecks(id));
+                out.writeLong(states.getLastSeen(id));
+            }
+            out.flush();
+        } catch (IOException e) {
+            //can't happen writing to memory
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public synchronized boolean save(byte[] encoded) {
+        return StreamFileHandler.writeAtomically(snapshotPath, encoded);
+    }
+
+    public synchronized int restore(StreamStates states) {
+        //copy saved state onto streams that are still being watched
+        //returns how many were restored, 0 if there was no usable snapshot
+
+        if (!snapshotPath.toFile().exists()) return 0;
+
+        int restored = 0;
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int version;
+            if (buffer.getInt() != MAGIC || ((version = buffer.getInt()) != VERSION && version != 1)) {
+                System.out.println("Ignoring state snapshot, unknown format");
+                return 0;
+            }
+            long savedAt = buffer.getLong();
+            int count = buffer.getInt();
+            for (int i=0; i<count; i++) {
+                String name = readString(buffer);
+                boolean live;
+                int titleHash;
+                if (version == 1) {
+                    String status = readString(buffer);
+                    live = status != null;
+                    titleHash = live ? status.hashCode() : 0;
+                } else {
+                    live = buffer.get() != 0;
+                    titleHash = buffer.getInt();
+                }
+                String game = readString(buffer);
+                String displayName = readString(buffer);
+                int offlineChecks = buffer.get();
+                long lastSeen = buffer.getLong();
+
+                int id = states.getId(name);
+                if (id < 0) continue;
+                states.setLive(id, live);
+                states.setTitleHash(id, titleHash);
+                states.setGameId(id, states.internGame(game == null ? "" : game));
+                states.setDisplayName(id, displayName == null ? name : displayName);
+                states.setOfflineChecks(id, offlineChecks);
+                states.setLastSeen(id, lastSeen);
+                restored++;
+            }
+            System.out.println("Restored " + restored + " streams from snapshot taken "
+                    + ((System.currentTimeMillis() - savedAt) / 1000) + "s ago");
+        } catch (IOException | BufferUnderflowException e) {
+            System.out.println("Error reading state snapshot " + e);
+        }
+        return restored;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
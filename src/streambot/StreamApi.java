@@ -0,0 +1,27 @@
+package streambot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ *
+ * a twitch api backend the bot can poll streams through
+ * - each backend knows its own urls, response shapes and paging
+ * - callers split their names into batches of getBatchSize(),
+ *   and every request is paid for from the RateBudget under the given use
+ */
+
+public interface StreamApi {
+
+    //most names sent in one request
+    int getBatchSize();
+
+    //streams from the batch that are live right now, following every page
+    ArrayList<LiveStream> getLiveStreams(ArrayList<String> names, RateBudget.Use use) throws IOException;
+
+    //whether streams are polled by user id once the NameCache knows it
+    boolean pollsById();
+
+    //accounts for the names in the batch, names that don't exist are left out
+    ArrayList<TwitchUser> getUsers(ArrayList<String> names, RateBudget.Use use) throws IOException;
+}
@@ -1,59 +1,83 @@
 package streambot;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 
 /**
  * 
  * this represents the irc channel that the bot resides in
- * keeps track of the list of streams that get announced in that channel
- * as well as the following user preferences:
- * add/remove streams to the list,
+ * the list of streams that get announced in that channel is kept by the
+ * StreamManager (as subscriptions under this channel's index), this
+ * keeps the following user preferences:
  * customize color scheme (flavor),
- * whether or not streams get announced if they go offline.
+ * whether or not streams get announced if they go offline,
+ * how many changes in one cycle before announcements turn into a digest.
+ * also keeps a roster of which of its streams are live as of the
+ * last poll, so !live can be answered without asking the api.
  */
 
 public class StreamChannel {
 
     private String channel = "";
 
-    private ArrayList<String> streams = new ArrayList<>();
+    //streams on this channel's list that are currently live
+    //key = twitch channel name; value = display name
+    private LinkedHashMap<String, String> liveRoster = new LinkedHashMap<>();
+    private long rosterUpdated = 0;
 
     private int flavor = -1;
     private boolean isFlavorRandomized = false;
     private boolean isAnnouncingOffline = true;
+    private int digestThreshold = 0;
 
-    public StreamChannel(String channel, ArrayList<String> streams,
-            int flavor, boolean isFlavorRandomized, boolean isAnnouncingOffline) {
+    public StreamChannel(String channel, int flavor,
+            boolean isFlavorRandomized, boolean isAnnouncingOffline, int digestThreshold) {
 
         this.channel = channel;
-        this.streams = streams;
         this.flavor = flavor;
         this.isFlavorRandomized = isFlavorRandomized;
         this.isAnnouncingOffline = isAnnouncingOffline;
+        this.digestThreshold = digestThreshold;
     }
 
-    public void createAnnouncements(ArrayList<StreamInfo> changedStreams) {
-        ArrayList<StreamInfo> streamsToAnnounce = new ArrayList<>();
-        for (StreamInfo stream : changedStreams) {
-            if (streams.contains(stream.getName())) {
-                streamsToAnnounce.add(stream);
-            }
+    public void createAnnouncements(ArrayList<StreamEvent> events) {
+        //events have already been routed to this channel by the
+        //stream manager's subscription index, so no filtering needed
+
+        for (StreamEvent event : events) {
+            updateRoster(event);
         }
-        if (streamsToAnnounce.size() > 0) {
-            Announcer.getAnnouncer().announce(this, streamsToAnnounce);
+        Announcer.getAnnouncer().announce(this, events);
+    }
+
+    private synchronized void updateRoster(StreamEvent event) {
+        if (event.getType() == StreamEvent.Type.OFFLINE) {
+            liveRoster.remove(event.getName());
+        } else {
+            liveRoster.put(event.getName(), event.getDisplayName());
         }
     }
 
-    public ArrayList<String> getList() {
-        return streams;
+    public synchronized void seedRoster(String stream, String displayName) {
+        //stream added that the poller already knows is live
+        liveRoster.put(stream, displayName);
     }
 
-    public boolean addStream(String stream) {
-        return streams.add(stream);
+    public synchronized void setRosterUpdated(long time) {
+        rosterUpdated = time;
     }
 
-    public boolean removeStream(String stream) {
-        return streams.remove(stream);
+    public synchronized long getRosterUpdated() {
+        return rosterUpdated;
+    }
+
+    public synchronized ArrayList<String> getLiveRoster() {
+        return new ArrayList<>(liveRoster.values());
+    }
+
+    public synchronized void removeFromRoster(String stream) {
+        //stream taken off this channel's list
+        liveRoster.remove(stream);
     }
 
     public boolean isFlavorRandomized() {
@@ -72,6 +96,14 @@ public class StreamChannel {
         this.isAnnouncingOffline = isAnnouncingOffline;
     }
 
+    public int getDigestThreshold() {
+        return digestThreshold;
+    }
+
+    public void setDigestThreshold(int digestThreshold) {
+        this.digestThreshold = digestThreshold;
+    }
+
     public String getChannel() {
         return channel;
     }
@@ -0,0 +1,115 @@
+package streambot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * 
+ * compares one cycle's live streams against the stored stream state
+ * - walks the streams polled this cycle, looking each one up in the live map
+ * - updates the stored StreamStates and emits a StreamEvent per change
+ * - a stream needs OFFLINE_CHECKS consecutive missed polls to go offline;
+ *   streams that weren't polled this cycle are left alone
+ * - pushed notifications go through the same checks, but a pushed
+ *   offline is taken at its word
+ */
+
+public class StreamDiff {
+
+    private static final int OFFLINE_CHECKS = 3;
+
+    //the streams api lags behind pushed offlines, so polls that still
+    //show the stream live are ignored for a while after one
+    private static final long PUSH_GRACE = 3 * 60 * 1000L;
+
+    public static ArrayList<StreamEvent> diff(StreamStates states, ArrayList<String> polled, PollResult poll) {
+
+        ArrayList<StreamEvent> events = new ArrayList<>();
+        HashMap<String, LiveStream> liveStreams = poll.getLiveStreams();
+
+        for (String stream : polled) {
+            int id = states.getId(stream);
+            if (id < 0) continue; //removed while polling
+            LiveStream live = liveStreams.get(stream);
+
+            if (live != null && System.currentTimeMillis() - states.getPushedOffline(id) < PUSH_GRACE) {
+                continue; //stale, it was pushed offline moments ago
+            } else if (live != null) {
+                StreamEvent event = diffOnline(states, id, live);
+                if (event != null) events.add(event);
+            } else if (poll.isComplete() && states.isLive(id)) {
+                //only trust a miss if every chunk came back this cycle
+                StreamEvent event = diffOffline(states, id);
+                if (event != null) events.add(event);
+            }
+        }
+
+        return events;
+    }
+
+    public static StreamEvent diffPushed(StreamStates states, int id, LiveStream live) {
+        //live = the stream's current info, null if it went offline
+
+        if (live != null) {
+            states.setPushedOffline(id, 0);
+            return diffOnline(states, id, live);
+        }
+        states.setPushedOffline(id, System.currentTimeMillis());
+        if (!states.isLive(id)) {
+            return null;
+        }
+        states.setOfflineChecks(id, 0);
+        states.setLive(id, false);
+        return offlineEvent(states, id);
+    }
+
+    private static StreamEvent diffOnline(StreamStates states, int id, LiveStream live) {
+
+        //stream is online, so reset offline checks
+        states.setOfflineChecks(id, 0);
+        states.setDisplayName(id, live.getDisplayName());
+        states.setLastSeen(id, System.currentTimeMillis());
+
+        //only a hash of the title is kept, the event gets the title itself
+        int titleHash = live.getStatus().hashCode();
+        int gameId = states.internGame(live.getGame());
+
+        //if stream has not been announced
+        if (!states.isLive(id)) {
+            states.setLive(id, true);
+            states.setTitleHash(id, titleHash);
+            states.setGameId(id, gameId);
+            return new StreamEvent(StreamEvent.Type.ONLINE, states.getName(id), states.getDisplayName(id),
+                    live.getStatus(), live.getGame());
+        }
+
+        //if stream has been online and updated title or game
+        if (states.getTitleHash(id) != titleHash || states.getGameId(id) != gameId) {
+            states.setTitleHash(id, titleHash);
+            states.setGameId(id, gameId);
+            return new StreamEvent(StreamEvent.Type.STATUS_CHANGED, states.getName(id), states.getDisplayName(id),
+                    live.getStatus(), live.getGame());
+        }
+
+        return null;
+    }
+
+    private static StreamEvent diffOffline(StreamStates states, int id) {
+
+        int offlineChecks = states.getOfflineChecks(id) + 1;
+        states.setOfflineChecks(id, offlineChecks);
+        if (offlineChecks < OFFLINE_CHECKS) {
+            System.out.println(offlineChecks + " offline checks for " + states.getName(id));
+            return null;
+        }
+
+        states.setOfflineChecks(id, 0);
+        states.setLive(id, false);
+        return offlineEvent(states, id);
+    }
+
+    private static StreamEvent offlineEvent(StreamStates states, int id) {
+        return new StreamEvent(StreamEvent.Type.OFFLINE, states.getName(id), states.getDisplayName(id),
+                null, states.getGame(id));
+    }
+}
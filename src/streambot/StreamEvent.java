@@ -0,0 +1,67 @@
+package streambot;
+
+/**
+ * 
+ * a change in a stream's state found during a poll cycle
+ * holds the stream's info at the time of the change, including the
+ * full title, which the stored stream state only keeps a hash of
+ */
+
+public class StreamEvent {
+
+    public enum Type {
+        ONLINE,
+        STATUS_CHANGED,
+        OFFLINE
+    }
+
+    private Type type;
+    private String name = "";
+    private String displayName = "";
+    private String status = "";
+    private String game = "";
+
+    //formatted announcement per flavor, filled in lazily by the Announcer
+    //strings are immutable, so a race here only means formatting twice
+    private String[] announcements = new String[Announcer.getFlavors().length];
+
+    public StreamEvent(Type type, String name, String displayName, String status, String game) {
+        this.type = type;
+        this.name = name;
+        this.displayName = displayName;
+        this.status = status;
+        this.game = game;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getGame() {
+        return game;
+    }
+
+    public String getUrl() {
+        return "https://twitch.tv/" + name;
+    }
+
+    public String getAnnouncement(int flavor) {
+        return announcements[flavor];
+    }
+
+    public void setAnnouncement(int flavor, String announcement) {
+        announcements[flavor] = announcement;
+    }
+}
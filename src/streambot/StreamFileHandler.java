@@ -1,21 +1,24 @@
 package streambot;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 
 public class StreamFileHandler {
 
-    private String globalFilePath = "";
     private String channelFilePath = "";
 
     public StreamFileHandler() {
-        globalFilePath = Paths.get("data" + File.separator + "streamlists" + File.separator + "global.txt").toString();
         channelFilePath = Paths.get("data" + File.separator + "streamlists" + File.separator + "#").toString();
     }
 
@@ -38,50 +41,65 @@ public class StreamFileHandler {
         return channels;
     }
 
-    public ArrayList<String> getGlobalList() {
-        return getList(globalFilePath);
+    public ArrayList<String> getImportList(String fileName) {
+        //names to bulk import from a file in data/, any whitespace or comma separated
+        //only plain file names are allowed, no paths
+
+        ArrayList<String> names = new ArrayList<>();
+        if (fileName.contains("/") || fileName.contains("\\") || fileName.startsWith(".")) {
+            return names;
+        }
+        String filePath = Paths.get("data" + File.separator + fileName).toString();
+        if (!new File(filePath).isFile()) {
+            return names;
+        }
+        for (String line : getList(filePath)) {
+            for (String name : line.split("[\\s,]+")) {
+                if (!name.isEmpty()) names.add(name);
+            }
+        }
+        return names;
     }
 
     public ArrayList<String> getChannelList(String channel) {
+        //old per-channel list file, only read to migrate into the StreamStore
+
         return getList(channelFilePath + channel + ".txt");
     }
 
-    private void rewriteFile(ArrayList<String> streams, String filePath) {
-
-        File currentFile = new File(filePath);
-        File tempFile = new File(filePath + "temp.txt");
+    public static boolean writeAtomically(Path path, byte[] data) {
+        //write to a temp file, fsync it, then move it over the original
+        //so a crash leaves either the old file or the new one, never neither
 
+        Path tempFile = path.resolveSibling(path.getFileName() + ".tmp");
         try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile, true));
-            for (String stream : streams) {
-                writer.write(stream + System.getProperty("line.separator"));
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
             }
-            writer.close();
-
-            long lengthChanged = currentFile.length() - tempFile.length();
 
-            if (!currentFile.delete()) System.out.println("Problem deleting " + filePath);
-            if (!tempFile.renameTo(currentFile)) System.out.println("Couldn't rename " + filePath);
+            try {
+                Files.move(tempFile, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+            }
 
-            if (lengthChanged != 0) {
-                System.out.println(filePath + " changed " + Math.abs(lengthChanged) + " bytes.");
-            } else {
-                System.out.println(filePath + " unchanged.");
+            //make the rename itself durable, not supported everywhere
+            Path dir = path.toAbsolutePath().getParent();
+            try (FileChannel dirChannel = FileChannel.open(dir, StandardOpenOption.READ)) {
+                dirChannel.force(true);
+            } catch (IOException e) {
+                //best effort
             }
+            return true;
         } catch (IOException e) {
-            System.out.println("Error rewriting file " + filePath);
+            System.out.println("Error rewriting file " + path);
             e.printStackTrace();
+            return false;
         }
-
-    }
-
-    public void rewriteChannelFile(ArrayList<String> streams, String channel) {
-        rewriteFile(streams, channelFilePath + channel + ".txt");
     }
-
-    public void rewriteGlobalFile(ArrayList<String> streams) {
-        rewriteFile(streams, globalFilePath);
-    }
-
-
 }
@@ -0,0 +1,129 @@
+package streambot;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * 
+ * append-only log of stream list changes, one line per add/remove:
+ * "+ #channel stream" or "- #channel stream"
+ * - written as each change happens, instead of rewriting every list
+ * - replayed on startup on top of the last stream list snapshot
+ * - rotated out when the snapshot is rewritten (compaction), the rotated
+ *   file is only deleted once the new snapshot is safely on disk
+ */
+
+public class StreamJournal {
+
+    private String journalPath = "";
+    private String rotatedPath = "";
+
+    private BufferedWriter writer;
+    private int entries = 0;
+
+    public StreamJournal() {
+        journalPath = Paths.get("data" + File.separator + "streamlists" + File.separator + "journal.txt").toString();
+        rotatedPath = journalPath + ".old";
+    }
+
+    public ArrayList<String[]> replay() {
+        //every entry still on disk, oldest first, as {op, channel, stream}
+        //an interrupted compaction leaves a rotated file, which comes first
+
+        ArrayList<String[]> changes = new ArrayList<>();
+        for (String filePath : new String[] {rotatedPath, journalPath}) {
+            if (!new File(filePath).exists()) continue;
+            try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] change = line.split(" ");
+                    if (change.length == 3 && (change[0].equals("+") || change[0].equals("-"))) {
+                        changes.add(change);
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("Error reading journal " + filePath);
+                e.printStackTrace();
+            }
+        }
+        entries = changes.size();
+        return changes;
+    }
+
+    public void logAdd(String channel, String stream) {
+        append("+", channel, stream);
+    }
+
+    public void logRemove(String channel, String stream) {
+        append("-", channel, stream);
+    }
+
+    private void append(String op, String channel, String stream) {
+        try {
+            if (writer == null) {
+                writer = new BufferedWriter(new FileWriter(journalPath, true));
+            }
+            writer.write(op + " " + channel + " " + stream + System.getProperty("line.separator"));
+            entries++;
+        } catch (IOException e) {
+            System.out.println("Error writing journal " + e.getMessage());
+        }
+    }
+
+    public void flush() {
+        try {
+            if (writer != null) writer.flush();
+        } catch (IOException e) {
+            System.out.println("Error writing journal " + e.getMessage());
+        }
+    }
+
+    public void clear() {
+        //everything replayed has been written to a new snapshot
+
+        rotate();
+        deleteRotated();
+    }
+
+    public boolean rotate() {
+        //start a fresh journal, the old one is kept until compaction finishes
+
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        } catch (IOException e) {
+            System.out.println("Error closing journal " + e.getMessage());
+        }
+
+        File journal = new File(journalPath);
+        if (journal.exists() && !journal.renameTo(new File(rotatedPath))) {
+            System.out.println("Couldn't rotate journal " + journalPath);
+            return false;
+        }
+        entries = 0;
+        return true;
+    }
+
+    public void deleteRotated() {
+        File rotated = new File(rotatedPath);
+        if (rotated.exists() && !rotated.delete()) {
+            System.out.println("Problem deleting " + rotatedPath);
+        }
+    }
+
+    public boolean hasRotated() {
+        return new File(rotatedPath).exists();
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+}
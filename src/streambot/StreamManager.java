@@ -2,9 +2,15 @@ package streambot;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
@@ -14,47 +20,151 @@ import org.json.JSONObject;
  * - checks twitch's REST API and pushes status updates to channels
  * - adds/remove streams from channel lists
  * - saves any user-made changes in data
+ * commands and the poller run on different threads, so shared state is
+ * only touched while holding the manager's lock, and api requests are
+ * always made outside of it
  */
 
 public class StreamManager {
 
-    StreamFileHandler fileHandler;
-    ChannelPreferences prefs;
+    private static final int DEFAULT_DIGEST_THRESHOLD = 8;
+
+    //journal entries before the store is rewritten and the journal folded in
+    private static final int COMPACT_THRESHOLD = 500;
+
+    //poll cycles between runtime state snapshots
+    private static final int SNAPSHOT_CYCLES = 5;
 
-    //global map of all streams and their current online status
-    //key = twitch channel name; value = StreamInfo (current online status)
-    private HashMap<String, StreamInfo> streamers = new HashMap<>();
+    //longest shutdown waits for each store write
+    private static final long SHUTDOWN_SAVE_WAIT = 10000;
+
+    StreamFileHandler fileHandler;
+    StreamStore store;
+    StreamPoller poller;
+    StreamJournal journal;
+    StateSnapshot snapshot;
+    PollTiers tiers;
+    private int cyclesSinceSnapshot = 0;
+
+    //rewrites the store in the background
+    private ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean compacting = false;
+    private Future<?> compaction;
+
+    //runtime state of all watched streams (online status, offline checks, ...)
+    //and which channels announce each of them, by channel index
+    //stored by column, so six-figure stream counts stay small in memory
+    private StreamStates streamers = new StreamStates();
     
     //each channel that the bot announces streams in
     //key = irc channel name; value = StreamChannel (data relevant to channel)
     private HashMap<String, StreamChannel> channels = new HashMap<>();
 
-    //each time user changes a pref or adds/removes a stream, the files
-    //need to be rewritten, so flag the change and rewrite the files
-    //periodically, rather than *every* time they're changed.
-    boolean filesChanged = false;
+    //channel index used for subscriptions in streamers -> StreamChannel
+    private ArrayList<StreamChannel> channelIndex = new ArrayList<>();
+
+    //adds/removes go straight to the journal, but prefs need the whole
+    //store rewritten, so flag the change and rewrite it periodically,
+    //rather than *every* time they're changed.
     boolean prefsChanged = false;
 
-    public StreamManager(ArrayList<String> ircChannels) {
+    public StreamManager(ArrayList<String> ircChannels, StreamPoller poller, PollTiers tiers) {
         fileHandler = new StreamFileHandler();
-        prefs = new ChannelPreferences();
-        initializeStreamers();
+        store = new StreamStore();
+        this.poller = poller;
+        journal = new StreamJournal();
+        snapshot = new StateSnapshot();
+        this.tiers = tiers;
         setUpChannels(ircChannels);
+        replayJournal();
+        initializeStreamers();
     }
 
     private void initializeStreamers() {
-        ArrayList<String> globalList = fileHandler.getGlobalList();
-        for (String stream : globalList) {
-            streamers.put(stream, new StreamInfo(stream));
+        //global list is every stream on any channel's list,
+        //already built up by subscribing the channels' lists
+
+        //resume from the last run's state, so streams that were already
+        //live then aren't announced again, only what changed since
+        if (snapshot.restore(streamers) > 0) {
+            for (int id = 0; id < streamers.getIdLimit(); id++) {
+                if (!streamers.isUsed(id) || !streamers.isLive(id)) continue;
+                for (int c = streamers.nextSubscriber(id, 0); c >= 0; c = streamers.nextSubscriber(id, c + 1)) {
+                    channelIndex.get(c).seedRoster(streamers.getName(id), streamers.getDisplayName(id));
+                }
+            }
+        }
+    }
+
+    private void replayJournal() {
+        //apply changes made since the store was last written
+
+        ArrayList<String[]> changes = journal.replay();
+        for (String[] change : changes) {
+            StreamChannel streamChannel = channels.get(change[1]);
+            if (streamChannel == null) continue;
+            if (change[0].equals("+")) {
+                subscribe(change[2], streamChannel);
+            } else if (change[0].equals("-")) {
+                unsubscribe(change[2], streamChannel);
+            }
+        }
+
+        //fold it into a fresh store right away
+        if (changes.size() > 0 || journal.hasRotated()) {
+            System.out.println("Replayed " + changes.size() + " journal entries");
+            if (store.write(StreamStore.encode(streamers, channelIndex))) {
+                journal.clear();
+            }
         }
     }
 
     private void setUpChannels(ArrayList<String> ircChannels) {
 
-        JSONArray jsonChannelsArray = prefs.loadPreferences();
+        if (store.exists()) {
+            //the store subscribes the channels' lists as it loads them
+            ArrayList<StreamChannel> storedChannels = store.load(streamers);
+            if (storedChannels == null) {
+                FileLogger.logWarning("Error loading stream channel prefs");
+                streamers = new StreamStates();
+                return;
+            }
+            for (StreamChannel streamChannel : storedChannels) {
+                addChannel(streamChannel);
+            }
+        } else if (loadLegacyChannels()) {
+            FileLogger.logInfo("Migrating channels.json and stream lists into the store");
+            store.write(StreamStore.encode(streamers, channelIndex));
+        }
+
+        //channels added to the config since the store was written
+        //start with an empty list and default prefs
+        for (String channel : ircChannels) {
+            if (!channels.containsKey(channel)) {
+                FileLogger.logInfo("Adding new channel " + channel + " to the store");
+                addChannel(new StreamChannel(channel, 0, false, true, DEFAULT_DIGEST_THRESHOLD));
+                prefsChanged = true;
+            }
+        }
+    }
+
+    private void addChannel(StreamChannel streamChannel) {
+        //channel index = position in channelIndex, in load order
+        channels.put(streamChannel.getChannel(), streamChannel);
+        channelIndex.add(streamChannel);
+    }
+
+    private boolean loadLegacyChannels() {
+        //channels.json and one stream list file per channel, from before the store
+        //false if there was nothing to migrate
+
+        JSONArray jsonChannelsArray = new ChannelPreferences().loadPreferences();
         if (jsonChannelsArray == null) {
-            FileLogger.logWarning("Error loading stream channel prefs");
-            return;
+            return false;
         }
 
         for (int i=0; i<jsonChannelsArray.length(); i++) {
@@ -64,18 +174,42 @@ public class StreamManager {
             boolean randomize = channelJson.getBoolean("randomize_flavor");
             boolean announceOffline = channelJson.getBoolean("announce_offline");
 
-            channels.put(channel, new StreamChannel(channel,fileHandler.getChannelList(channel),
-                    flavor,randomize,announceOffline));
-        }
+            //optional, changes per cycle before announcing a digest instead (0 = never)
+            int digestThreshold = channelJson.optInt("digest_threshold", DEFAULT_DIGEST_THRESHOLD);
 
+            StreamChannel streamChannel = new StreamChannel(channel, flavor, randomize, announceOffline, digestThreshold);
+            addChannel(streamChannel);
+            for (String stream : fileHandler.getChannelList(channel)) {
+                subscribe(stream, streamChannel);
+            }
+        }
+        return true;
     }
 
-    public void checkForUpdates() {
-        getUpdates();
+    public boolean checkForUpdates() {
+        //returns false if the poll didn't fully succeed
+
+        boolean complete = getUpdates();
         saveData();
+        if (++cyclesSinceSnapshot >= SNAPSHOT_CYCLES) {
+            saveState();
+        }
+        return complete;
     }
 
-    private void getUpdates() {
+    public void saveState() {
+        //snapshot runtime state, it's encoded under the lock
+        //so the poller isn't held up by the write
+
+        byte[] encoded;
+        synchronized (this) {
+            encoded = StateSnapshot.encode(streamers);
+            cyclesSinceSnapshot = 0;
+        }
+        snapshot.save(encoded);
+    }
+
+    private boolean getUpdates() {
         // *****************************************
         // **** MAIN STREAM CHECKING LOGIC HERE ****
         // *****************************************
@@ -83,103 +217,177 @@ public class StreamManager {
         //compare list of live streams to cached, create list of streams that have changed
         //push list of stream changes to each stream channel to format & announce change
 
-        ArrayList<StreamInfo> changedStreams = new ArrayList<>();
-        
-        ArrayList<String> chunkedStreams = TwitchApiUtils.chunkifyStreams(new ArrayList<String>(streamers.keySet()));
-        for (String streams : chunkedStreams) {
+        //only streams due in their poll tier are checked this cycle
+        //all chunks are polled in parallel and merged before comparing
+        long now = System.currentTimeMillis();
+        ArrayList<String> streams = new ArrayList<>();
+        synchronized (this) {
+            for (int id = 0; id < streamers.getIdLimit(); id++) {
+                if (streamers.isUsed(id) && tiers.isDue(streamers, id, now)) {
+                    streams.add(streamers.getName(id));
+                }
+            }
+        }
+        PollResult poll = poller.poll(streams);
+        applyPoll(streams, poll, now);
 
-            JSONObject json = TwitchApiUtils.getJsonObject("https://api.twitch.tv/kraken/streams?channel=" + streams);
-            try {
-                JSONArray streamsArray = json.getJSONArray("streams");
-                int total = json.getInt("_total");
-                ArrayList<String> onlineStreams = new ArrayList<>();
-
-                for (int i=0; i<total; i++) {
-
-                    //get stream info
-                    JSONObject stream = streamsArray.getJSONObject(i);
-                    JSONObject channel = stream.getJSONObject("channel");
-                    String streamName = channel.getString("name");
-                    String currentStatus = channel.getString("status");
-                    
-                    //***temporary bug fix***
-                    //game can be null if not set by streamer
-                    String currentGame = "";
-                    if (!channel.isNull("game")) currentGame = channel.getString("game");
-                    
-                    onlineStreams.add(streamName);
-
-                    //compare each current stream status to previously stored stream status
-                    StreamInfo streamInfo = streamers.get(streamName);
-
-                    //all streams here are online, so reset offline checks
-                    if (streamInfo.getOfflineChecks() != 0) {
-                        streamInfo.resetOfflineChecks();
-                    }
+        //so future polls can go by id, which survives renames
+        if (poll.isComplete()) {
+            TwitchApiUtils.resolveUncached(streams);
+        }
+        return poll.isComplete();
+    }
 
-                    //if stream has not been announced
-                    if (streamInfo.getStatus() == null) {
-                        streamInfo.setStatus(currentStatus);
-                        streamInfo.setGame(currentGame);
-                        changedStreams.add(streamInfo);
-                    }
+    private synchronized void applyPoll(ArrayList<String> streams, PollResult poll, long now) {
+        ArrayList<StreamEvent> events = StreamDiff.diff(streamers, streams, poll);
 
-                    //if stream has been online and updated title or game
-                    else if (streamInfo.getStatus() != null && 
-                            (!streamInfo.getStatus().equals(currentStatus) || 
-                                    !streamInfo.getGame().equals(currentGame))) {
-                        streamInfo.setStatus(currentStatus);
-                        streamInfo.setGame(currentGame);
-                        streamInfo.setStatusChanged(true);
-                        changedStreams.add(streamInfo);
-                    }
+        //schedule the next check from each stream's updated history,
+        //after a failed chunk everything polled is retried next cycle
+        if (poll.isComplete()) {
+            for (String stream : streams) {
+                int id = streamers.getId(stream);
+                if (id >= 0) {
+                    tiers.polled(streamers, id, now);
                 }
+            }
+        }
 
-                //now check for streams that went offline
-                //needs three consecutive offline checks to be announced
-                for (String streamName : streamers.keySet()) {
-                    
-                    if (streamers.get(streamName).getStatus() != null && !onlineStreams.contains(streamName)) {
-                        StreamInfo streamInfo = streamers.get(streamName);
-                        if (streamInfo.getOfflineChecks() == 2) {
-                            streamInfo.resetOfflineChecks();
-                            streamInfo.setStatus(null);
-                            streamInfo.setStatusChanged(false);
-                            changedStreams.add(streamInfo);
-                        } else {
-                            streamInfo.incrementOfflineChecks();
-                            System.out.println(streamInfo.getOfflineChecks() + " offline checks for " + streamName);
-                        }
+        if (events.size() > 0) {
+            notifyChannels(events);
+        }
 
-                    }
-                }
+        //live rosters are only current if every chunk came back,
+        //live streams are always hot, so every cycle checks all of them
+        if (poll.isComplete()) {
+            for (StreamChannel streamChannel : channels.values()) {
+                streamChannel.setRosterUpdated(now);
+            }
+        }
+    }
+
+    public void pushOnline(String stream, LiveStream live) {
+        //stream.online notifications carry no title or game,
+        //so unless the sender included them they're looked up
+
+        synchronized (this) {
+            if (!streamers.contains(stream)) return;
+        }
+        if (live == null) {
+            ArrayList<String> streams = new ArrayList<>();
+            streams.add(stream);
+            live = poller.poll(streams).getLiveStreams().get(stream);
+            if (live == null) {
+                System.out.println("Pushed online for " + stream + " not in the api yet, leaving it to the poller");
+                return;
+            }
+        }
+        applyPush(stream, live);
+    }
+
+    public synchronized void pushUpdate(String stream, LiveStream live) {
+        //title or game changes only matter while the stream is live
+
+        int id = streamers.getId(stream);
+        if (id >= 0 && streamers.isLive(id)) {
+            applyPush(stream, live);
+        }
+    }
 
-            } catch (JSONException e) {
-                System.out.println("JSONException error!" + e.getMessage());
-            } catch (NullPointerException e) {
-                System.out.println("Null json returned!" + e.getMessage());
+    public void pushOffline(String stream) {
+        applyPush(stream, null);
+    }
+
+    private synchronized void applyPush(String stream, LiveStream live) {
+        //pushed notifications share the poller's diff and announcements
+
+        int id = streamers.getId(stream);
+        if (id < 0) return;
+        StreamEvent event = StreamDiff.diffPushed(streamers, id, live);
+        if (event != null) {
+            ArrayList<StreamEvent> events = new ArrayList<>();
+            events.add(event);
+            notifyChannels(events);
+        }
+    }
+
+    private void notifyChannels(ArrayList<StreamEvent> events) {
+        //route each event only to the channels that have the stream listed
+
+        LinkedHashMap<StreamChannel, ArrayList<StreamEvent>> channelEvents = new LinkedHashMap<>();
+        for (StreamEvent event : events) {
+            int id = streamers.getId(event.getName());
+            if (id < 0) continue;
+            for (int c = streamers.nextSubscriber(id, 0); c >= 0; c = streamers.nextSubscriber(id, c + 1)) {
+                channelEvents.computeIfAbsent(channelIndex.get(c), k -> new ArrayList<>()).add(event);
             }
         }
 
-        if (changedStreams.size() > 0) {
-            notifyChannels(changedStreams);
+        for (StreamChannel streamChannel : channelEvents.keySet()) {
+            streamChannel.createAnnouncements(channelEvents.get(streamChannel));
         }
     }
 
-    private void notifyChannels(ArrayList<StreamInfo> changedStreams) {
-        for (String channel : channels.keySet()) {
-            channels.get(channel).createAnnouncements(changedStreams);
+    private int subscribe(String stream, StreamChannel streamChannel) {
+        //the first channel to list a stream adds it to the global list
+
+        int id = streamers.put(stream);
+        streamers.subscribe(id, channelIndex.indexOf(streamChannel));
+        return id;
+    }
+
+    private boolean isListed(String stream, StreamChannel streamChannel) {
+        int id = streamers.getId(stream);
+        return id >= 0 && streamers.isSubscribed(id, channelIndex.indexOf(streamChannel));
+    }
+
+    private void unsubscribe(String stream, StreamChannel streamChannel) {
+        //once no channel lists a stream, it stops being polled
+
+        int id = streamers.getId(stream);
+        if (id < 0) return;
+        streamers.unsubscribe(id, channelIndex.indexOf(streamChannel));
+        if (!streamers.hasSubscribers(id)) {
+            streamers.remove(stream);
         }
     }
 
-    public void getLiveStreams(String channel) {
-        //get that are currently live for that channel
+    public void getLiveStreams(String channel, boolean fresh) {
+        //get streams that are currently live for that channel
+        //answered from the channel's live roster unless a fresh check
+        //was asked for or the poller hasn't finished a cycle yet
+
+        StreamChannel streamChannel = channels.get(channel);
+        long updated = streamChannel.getRosterUpdated();
+
+        ArrayList<String> liveStreams;
+        String age;
+        if (fresh || updated == 0) {
+            ArrayList<String> streams;
+            synchronized (this) {
+                //the channel's list is every stream subscribed under its index
+                streams = new ArrayList<>();
+                int index = channelIndex.indexOf(streamChannel);
+                for (int id = 0; id < streamers.getIdLimit(); id++) {
+                    if (streamers.isUsed(id) && streamers.isSubscribed(id, index)) {
+                        streams.add(streamers.getName(id));
+                    }
+                }
+            }
+            PollResult poll = poller.poll(streams, RateBudget.Use.COMMAND);
+            liveStreams = new ArrayList<>();
+            for (LiveStream stream : poll.getLiveStreams().values()) {
+                liveStreams.add(stream.getDisplayName());
+            }
+            age = poll.isComplete() ? "just now" : "just now, some streams couldn't be checked";
+        } else {
+            liveStreams = streamChannel.getLiveRoster();
+            age = ((System.currentTimeMillis() - updated) / 1000) + "s ago";
+        }
 
-        String liveStreams = TwitchApiUtils.getLiveStreams(channels.get(channel).getList());
-        if (liveStreams.length() > 0) {
-            Bot.say("Online: " + liveStreams, channel);
+        if (liveStreams.size() > 0) {
+            Bot.say("Online: " + String.join(", ", liveStreams) + " (as of " + age + ")", channel);
         } else {
-            Bot.say("No one~", channel);
+            Bot.say("No one~ (as of " + age + ")", channel);
         }
     }
 
@@ -195,28 +403,129 @@ public class StreamManager {
         //if stream is valid and new, it will re-add to global list
         //so the stream will be announced in the new channel
 
-        if (channels.get(channel).getList().contains(stream)) {
-            Bot.say(stream + " is already on the list!", channel);
+        synchronized (this) {
+            if (isListed(stream, channels.get(channel))) {
+                Bot.say(stream + " is already on the list!", channel);
+                return;
+            }
+        }
+        if (!TwitchApiUtils.isValidName(stream)) {
+            Bot.say(stream + " is not a valid twitch name", channel);
+            return;
+        }
+        ArrayList<String> names = new ArrayList<>();
+        names.add(stream);
+        HashSet<String> valid = TwitchApiUtils.getValidNames(names);
+        if (valid == null) {
+            Bot.say("An error occured checking " + stream + ", try again later", channel);
             return;
         }
-        JSONObject json = TwitchApiUtils.getJsonObject("https://api.twitch.tv/kraken/channels/" + stream);
-        if (json == null) {
+        if (!valid.contains(stream)) {
             Bot.say(stream + " is not a valid twitch name", channel);
             return;
         }
-        channels.get(channel).addStream(stream);
-        streamers.put(stream, new StreamInfo(stream));
-        filesChanged = true;
+        synchronized (this) {
+            //someone may have added it while we were validating
+            if (isListed(stream, channels.get(channel))) {
+                Bot.say(stream + " is already on the list!", channel);
+                return;
+            }
+            addStreamer(stream, channels.get(channel));
+            journal.logAdd(channel, stream);
+            journal.flush();
+        }
         Bot.say(stream + " added successfully!", channel);
     }
 
-    public void removeStream(String stream, String channel) {
+    public void addStreams(ArrayList<String> names, String channel) {
+        //bulk add, validates up to 100 names per api request and saves once
+        //streams already watched by another channel are known to be valid,
+        //and keep their current state instead of being re-announced
+
+        LinkedHashSet<String> toAdd = new LinkedHashSet<>();
+        ArrayList<String> toValidate = new ArrayList<>();
+        int alreadyListed = 0;
+        int rejected = 0;
+
+        synchronized (this) {
+            StreamChannel streamChannel = channels.get(channel);
+            for (String name : names) {
+                name = name.toLowerCase();
+                if (name.isEmpty()) {
+                    continue;
+                } else if (isListed(name, streamChannel)) {
+                    alreadyListed++;
+                } else if (!TwitchApiUtils.isValidName(name)) {
+                    rejected++;
+                } else if (toAdd.add(name) && !streamers.contains(name)) {
+                    toValidate.add(name);
+                }
+            }
+        }
+
+        if (toValidate.size() > 0) {
+            HashSet<String> valid = TwitchApiUtils.getValidNames(toValidate);
+            if (valid == null) {
+                Bot.say("An error occured checking names, nothing was added.", channel);
+                return;
+            }
+            for (String name : toValidate) {
+                if (!valid.contains(name)) {
+                    toAdd.remove(name);
+                    rejected++;
+                }
+            }
+        }
+
+        int added = 0;
+        synchronized (this) {
+            StreamChannel streamChannel = channels.get(channel);
+            for (String name : toAdd) {
+                if (isListed(name, streamChannel)) {
+                    alreadyListed++;
+                    continue;
+                }
+                addStreamer(name, streamChannel);
+                journal.logAdd(channel, name);
+                added++;
+            }
+            journal.flush();
+        }
+
+        Bot.say("added " + added + ", already on the list " + alreadyListed + ", invalid " + rejected, channel);
+    }
+
+    private void addStreamer(String stream, StreamChannel streamChannel) {
+        //a stream another channel already watches keeps its state,
+        //so it isn't announced again everywhere; if it's live the new
+        //channel gets it on its roster straight away
+
+        int id = subscribe(stream, streamChannel);
+        if (streamers.isLive(id)) {
+            streamChannel.seedRoster(stream, streamers.getDisplayName(id));
+        }
+    }
+
+    public void importStreams(String fileName, String channel) {
+        ArrayList<String> names = fileHandler.getImportList(fileName);
+        if (names.isEmpty()) {
+            Bot.say("nothing to import from " + fileName, channel);
+            return;
+        }
+        addStreams(names, channel);
+    }
+
+    public synchronized void removeStream(String stream, String channel) {
         //remove stream from channel's list
         //if stream is no longer referenced in any channel,
-        //it will be removed when files are updated
-
-        if (channels.get(channel).removeStream(stream)) {
-            filesChanged = true;
+        //it stops being polled
+
+        StreamChannel streamChannel = channels.get(channel);
+        if (isListed(stream, streamChannel)) {
+            unsubscribe(stream, streamChannel);
+            streamChannel.removeFromRoster(stream);
+            journal.logRemove(channel, stream);
+            journal.flush();
             Bot.say(stream + " removed from list", channel);
         } else {
             Bot.say(stream + " is not on the list!", channel);
@@ -224,55 +533,78 @@ public class StreamManager {
 
     }
 
-    public void saveData() {
-        if (filesChanged) {
-            updateFiles();
-        }
-        if (prefsChanged) {
-            savePreferences();
+    public synchronized void saveData() {
+        if ((journal.getEntries() >= COMPACT_THRESHOLD || prefsChanged || journal.hasRotated()) && !compacting) {
+            compact();
         }
     }
 
-    private void updateFiles() {
-        System.out.println("Rewriting files...");
-        ArrayList<String> allStreams = new ArrayList<>();
-        for (String channel : channels.keySet()) {
-            ArrayList<String> channelList = channels.get(channel).getList();
-            fileHandler.rewriteChannelFile(channelList, channel);
-            for (String stream : channelList) {
-                if (!allStreams.contains(stream)) {
-                    allStreams.add(stream);
+    public void saveDataAndWait() {
+        //for shutdown, the compactor is a daemon thread so the jvm won't
+        //wait for it; finish any write in progress, then write what
+        //changed since (adds/removes are already safe in the journal)
+
+        for (int i=0; i<2; i++) {
+            Future<?> pending;
+            synchronized (this) {
+                if (compacting) {
+                    pending = compaction;
+                } else if (prefsChanged || journal.hasRotated()) {
+                    pending = compact();
+                } else {
+                    return;
                 }
             }
+            if (pending == null) return;
+            try {
+                pending.get(SHUTDOWN_SAVE_WAIT, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                System.out.println("Error saving store on shutdown " + e);
+                return;
+            }
         }
-        fileHandler.rewriteGlobalFile(allStreams);
-        filesChanged = false;
     }
 
-    private void savePreferences() {
-        ArrayList<StreamChannel> updatedChannels = new ArrayList<>();
-        for (String channel : channels.keySet()) {
-            updatedChannels.add(channels.get(channel));
-        }
-        prefs.savePreferences(updatedChannels);
+    private Future<?> compact() {
+        //rotate the journal and rewrite the store in the background
+        //if this is interrupted the rotated journal is replayed on startup
+
+        //a rotated journal left by a failed write can't be rotated over,
+        //but everything in it is in memory too, so just write again; the
+        //current journal is kept, replaying it onto the new store is harmless
+        if (!journal.hasRotated() && !journal.rotate()) return null;
+        compacting = true;
         prefsChanged = false;
+        byte[] encoded = StreamStore.encode(streamers, channelIndex);
+        compaction = compactor.submit(() -> {
+            boolean written = store.write(encoded);
+            synchronized (this) {
+                if (written) {
+                    journal.deleteRotated();
+                } else {
+                    //keep the rotated journal, and try the prefs again next time
+                    prefsChanged = true;
+                }
+                compacting = false;
+            }
+        });
+        return compaction;
     }
 
     public void displayFlavors(String channel) {
         String[] flavors = Announcer.getFlavors();
         Bot.say("- Flavors -", channel);
         for (int i=0; i<flavors.length; i++) {
-            Bot.sleep(500);
             Bot.say(i + ": " + flavors[i], channel);
         }
         Bot.say("type '!changeflavor <number>' to select new flavor", channel);
     }
 
-    public void changeFlavor(String flavor, String channel) {
+    public synchronized void changeFlavor(String flavor, String channel) {
         try {
             int flavorIndex = Integer.valueOf(flavor);
 
-            if (flavorIndex >= 0 && flavorIndex <= Announcer.getFlavors().length) {
+            if (flavorIndex >= 0 && flavorIndex < Announcer.getFlavors().length) {
                 channels.get(channel).setRandomizeFlavor(false);
                 channels.get(channel).setFlavor(flavorIndex);
                 Bot.say("got it!", channel);
@@ -288,7 +620,24 @@ public class StreamManager {
         }
     }
 
-    public void setOfflineAnnouncements(String offline, String channel) {
+    public synchronized void setDigestThreshold(String threshold, String channel) {
+        //changes per cycle before announcing a digest instead (0 = never)
+
+        try {
+            int digestThreshold = Integer.valueOf(threshold);
+            if (digestThreshold < 0) {
+                Bot.say("sorry, i dont understand", channel);
+                return;
+            }
+            channels.get(channel).setDigestThreshold(digestThreshold);
+            Bot.say("got it!", channel);
+            prefsChanged = true;
+        } catch (NumberFormatException e) {
+            Bot.say("sorry, i dont understand", channel);
+        }
+    }
+
+    public synchronized void setOfflineAnnouncements(String offline, String channel) {
         if (offline.equalsIgnoreCase("on")) {
             channels.get(channel).setAnnouncingOffline(true);
             prefsChanged = true;
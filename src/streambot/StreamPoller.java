@@ -0,0 +1,186 @@
+package streambot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 
+ * polls the twitch api backend for a list of streams
+ * - every batch of names is requested in parallel on a bounded pool
+ * - results are merged into one PollResult before anything is diffed,
+ *   so a cycle takes about as long as its slowest chunk
+ * - each chunk waits until the RateBudget has room for it first
+ * - each chunk has a deadline, so one slow response can't hold up the
+ *   cycle; a request slower than the recent p95 gets a duplicate raced
+ *   against it, and failed chunks are retried a couple of times with
+ *   jittered backoff
+ * - while the api's circuit breaker isn't closed the cycle counts as
+ *   incomplete, so nothing is marked offline during an outage
+ */
+
+public class StreamPoller {
+
+    //longest a chunk waits on the rate limit, about one window
+    private static final long MAX_BUDGET_WAIT = 65000;
+
+    private static final int MAX_RETRIES = 2;
+    private static final long RETRY_BACKOFF = 500;
+
+    //never hedge sooner than this, even if the api is very fast
+    private static final long MIN_HEDGE_DELAY = 100;
+
+    private StreamApi api;
+    private ExecutorService executor;
+    private ExecutorService requests;
+    private LatencyWindow latencies = new LatencyWindow(200);
+    private long deadline;
+
+    public StreamPoller(StreamApi api, int concurrency, long deadline) {
+        this.api = api;
+        this.deadline = deadline;
+        executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "stream-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        //room for every chunk's request plus a hedge
+        requests = Executors.newFixedThreadPool(concurrency * 2, runnable -> {
+            Thread thread = new Thread(runnable, "stream-request");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public PollResult poll(ArrayList<String> streams) {
+        return poll(streams, RateBudget.Use.POLL);
+    }
+
+    public PollResult poll(ArrayList<String> streams, RateBudget.Use use) {
+        //send every chunk at once and wait for all of them
+
+        PollResult result = new PollResult();
+        ArrayList<Future<?>> pending = new ArrayList<>();
+        for (ArrayList<String> chunk : TwitchApiUtils.batch(streams, api.getBatchSize())) {
+            pending.add(executor.submit(() -> pollChunk(chunk, use, result)));
+        }
+
+        for (Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.markIncomplete();
+            } catch (ExecutionException e) {
+                System.out.println("Error polling chunk " + e.getCause());
+                result.markIncomplete();
+            }
+        }
+
+        //the circuit opened (or hasn't closed yet), so misses can't be trusted
+        if (!circuitClosed()) {
+            System.out.println("Twitch api circuit is open, pausing offline checks");
+            result.markIncomplete();
+        }
+        return result;
+    }
+
+    private static boolean circuitClosed() {
+        try {
+            return ApiClient.getInstance().isCircuitClosed();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void pollChunk(ArrayList<String> chunk, RateBudget.Use use, PollResult result) {
+        //bounded retries with jittered backoff, a rate limited
+        //chunk waits for the window to reset before trying again
+
+        for (int attempt = 0; attempt <= MAX_RETRIES; attempt++) {
+            try {
+                if (attempt > 0) {
+                    long backoff = RETRY_BACKOFF << (attempt - 1);
+                    Thread.sleep(backoff + ThreadLocalRandom.current().nextLong(backoff + 1));
+                }
+                if (!RateBudget.getInstance().awaitSpare(use, MAX_BUDGET_WAIT)) {
+                    System.out.println("No api budget left for chunk, skipping it this cycle");
+                    break;
+                }
+                for (LiveStream stream : requestHedged(chunk, use)) {
+                    result.addStream(stream);
+                }
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RateLimitedException e) {
+                System.out.println("Rate limited polling streams " + e.getMessage());
+            } catch (IOException e) {
+                System.out.println("Error polling streams " + e.getMessage());
+                if (!circuitClosed()) break;
+            }
+        }
+        result.markIncomplete();
+    }
+
+    private ArrayList<LiveStream> requestHedged(ArrayList<String> chunk, RateBudget.Use use) throws IOException, InterruptedException {
+        //wait for the request until the p95 latency, then race a duplicate
+        //against it; whichever finishes first wins, the other is cancelled
+
+        CompletionService<ArrayList<LiveStream>> completion = new ExecutorCompletionService<>(requests);
+        ArrayList<Future<ArrayList<LiveStream>>> sent = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        long end = start + deadline;
+        long p95 = latencies.percentile(0.95);
+        long hedgeAt = p95 < 0 ? end : start + Math.max(MIN_HEDGE_DELAY, p95);
+
+        sent.add(completion.submit(() -> api.getLiveStreams(chunk, use)));
+        int running = 1;
+        IOException failure = null;
+        try {
+            while (running > 0) {
+                long now = System.currentTimeMillis();
+                if (now >= end) {
+                    throw new IOException("Chunk request missed its " + deadline + "ms deadline");
+                }
+
+                boolean canHedge = sent.size() == 1 && hedgeAt < end;
+                Future<ArrayList<LiveStream>> done = completion.poll((canHedge ? hedgeAt : end) - now, TimeUnit.MILLISECONDS);
+                if (done == null) {
+                    if (canHedge && System.currentTimeMillis() >= hedgeAt) {
+                        hedgeAt = end;
+                        if (RateBudget.getInstance().awaitSpare(use, 0)) {
+                            System.out.println("Chunk slower than p95 (" + p95 + "ms), sending a hedged request");
+                            sent.add(completion.submit(() -> api.getLiveStreams(chunk, use)));
+                            running++;
+                        }
+                    }
+                    continue;
+                }
+
+                running--;
+                try {
+                    ArrayList<LiveStream> streams = done.get();
+                    latencies.add(System.currentTimeMillis() - start);
+                    return streams;
+                } catch (ExecutionException e) {
+                    failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+            }
+            throw failure;
+        } finally {
+            for (Future<ArrayList<LiveStream>> future : sent) {
+                future.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package streambot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ *
+ * runtime state of every watched stream, stored column by column
+ * - each stream gets an int id from a NameTable, its state lives at that
+ *   index in primitive arrays, and ids of removed streams are reused
+ * - which channels announce a stream (each channel's list) is a bitset
+ *   in the same columns, one bit per channel index
+ * - display names are kept as a mask of which letters are capitalized,
+ *   only ones that differ some other way are stored as Strings
+ * - games are dictionary encoded, and titles are only kept as a hash
+ *   for change detection; the full title comes from the poll result
+ *   when an announcement is formatted
+ * - times are stored as seconds since EPOCH_BASE
+ * not thread safe, the StreamManager only touches it under its lock
+ */
+
+public class StreamStates {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final byte LIVE = 1;
+
+    //stored times count from here, so an int of seconds lasts until 2088
+    private static final long EPOCH_BASE = 1600000000000L;
+
+    private NameTable names = new NameTable(INITIAL_CAPACITY);
+
+    //columns, indexed by stream id
+    private int[] caseMasks = new int[INITIAL_CAPACITY]; //see NameTable.caseMask
+    private byte[] flags = new byte[INITIAL_CAPACITY];
+    private byte[] offlineChecks = new byte[INITIAL_CAPACITY];
+    private int[] titleHashes = new int[INITIAL_CAPACITY];
+    private int[] gameIds = new int[INITIAL_CAPACITY];
+    private int[] lastSeen = new int[INITIAL_CAPACITY];
+    private int[] nextPoll = new int[INITIAL_CAPACITY];
+
+    //channelWords longs per stream, bit n set = channel index n announces it
+    private long[] subscriptions = new long[INITIAL_CAPACITY];
+    private int channelWords = 1;
+
+    //rarely set, so kept out of the columns
+    //key = stream id; value = when it was pushed offline (millis)
+    private HashMap<Integer, Long> pushedOffline = new HashMap<>();
+
+    //key = stream id; value = display name that's more than a case change
+    private HashMap<Integer, String> otherDisplayNames = new HashMap<>();
+
+    //game dictionary, id 0 is the empty game
+    private ArrayList<String> games = new ArrayList<>();
+    private HashMap<String, Integer> gameIndex = new HashMap<>();
+
+    public StreamStates() {
+        internGame("");
+    }
+
+    public int put(String name) {
+        //add a stream if it isn't there yet; returns its id
+
+        int id = names.getId(name);
+        if (id >= 0) {
+            return id;
+        }
+        id = names.add(name);
+        if (names.getCapacity() > flags.length) {
+            grow(names.getCapacity());
+        }
+        caseMasks[id] = 0;
+        otherDisplayNames.remove(id);
+        flags[id] = 0;
+        offlineChecks[id] = 0;
+        titleHashes[id] = 0;
+        gameIds[id] = 0;
+        lastSeen[id] = 0;
+        nextPoll[id] = 0;
+        Arrays.fill(subscriptions, id * channelWords, (id + 1) * channelWords, 0);
+        return id;
+    }
+
+    public void remove(String name) {
+        int id = names.remove(name);
+        if (id < 0) return;
+        otherDisplayNames.remove(id);
+        pushedOffline.remove(id);
+    }
+
+    public int getId(String name) {
+        //-1 if the stream isn't watched
+        return names.getId(name);
+    }
+
+    public boolean contains(String name) {
+        return names.getId(name) >= 0;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public int getIdLimit() {
+        //every id in use is below this, check isUsed when iterating
+        return names.getIdLimit();
+    }
+
+    public boolean isUsed(int id) {
+        return names.isUsed(id);
+    }
+
+    public String getName(int id) {
+        return names.getName(id);
+    }
+
+    public String getDisplayName(int id) {
+        String other = otherDisplayNames.isEmpty() ? null : otherDisplayNames.get(id);
+        return other != null ? other : NameTable.applyCase(names.getName(id), caseMasks[id]);
+    }
+
+    public void setDisplayName(int id, String displayName) {
+        //twitch mostly sends the name capitalized, that fits in the mask
+
+        int mask = NameTable.caseMask(names.getName(id), displayName);
+        if (mask >= 0) {
+            caseMasks[id] = mask;
+            otherDisplayNames.remove(id);
+        } else {
+            caseMasks[id] = 0;
+            otherDisplayNames.put(id, displayName);
+        }
+    }
+
+    public boolean isLive(int id) {
+        return (flags[id] & LIVE) != 0;
+    }
+
+    public void setLive(int id, boolean live) {
+        flags[id] = (byte) (live ? flags[id] | LIVE : flags[id] & ~LIVE);
+    }
+
+    public int getTitleHash(int id) {
+        return titleHashes[id];
+    }
+
+    public void setTitleHash(int id, int hash) {
+        titleHashes[id] = hash;
+    }
+
+    public int getGameId(int id) {
+        return gameIds[id];
+    }
+
+    public void setGameId(int id, int gameId) {
+        gameIds[id] = gameId;
+    }
+
+    public String getGame(int id) {
+        return games.get(gameIds[id]);
+    }
+
+    public int internGame(String game) {
+        //dictionary id for a game name, adding it the first time it's seen
+
+        Integer gameId = gameIndex.get(game);
+        if (gameId == null) {
+            gameId = games.size();
+            games.add(game);
+            gameIndex.put(game, gameId);
+        }
+        return gameId;
+    }
+
+    public int getOfflineChecks(int id) {
+        return offlineChecks[id];
+    }
+
+    public void setOfflineChecks(int id, int checks) {
+        offlineChecks[id] = (byte) Math.min(Byte.MAX_VALUE, checks);
+    }
+
+    public long getLastSeen(int id) {
+        //0 if never seen live
+        return toMillis(lastSeen[id]);
+    }
+
+    public void setLastSeen(int id, long millis) {
+        lastSeen[id] = toSeconds(millis);
+    }
+
+    public long getNextPoll(int id) {
+        return toMillis(nextPoll[id]);
+    }
+
+    public void setNextPoll(int id, long millis) {
+        nextPoll[id] = toSeconds(millis);
+    }
+
+    public long getPushedOffline(int id) {
+        Long pushed = pushedOffline.get(id);
+        return pushed == null ? 0 : pushed;
+    }
+
+    public void setPushedOffline(int id, long millis) {
+        if (millis == 0) {
+            pushedOffline.remove(id);
+        } else {
+            pushedOffline.put(id, millis);
+        }
+    }
+
+    public void subscribe(int id, int channel) {
+        if (channel >= channelWords * 64) {
+            widen(channel / 64 + 1);
+        }
+        subscriptions[id * channelWords + channel / 64] |= 1L << channel;
+    }
+
+    public void unsubscribe(int id, int channel) {
+        if (channel < channelWords * 64) {
+            subscriptions[id * channelWords + channel / 64] &= ~(1L << channel);
+        }
+    }
+
+    public boolean isSubscribed(int id, int channel) {
+        return channel < channelWords * 64
+                && (subscriptions[id * channelWords + channel / 64] & (1L << channel)) != 0;
+    }
+
+    public int getSubscriberCount(int id) {
+        int count = 0;
+        for (int word = 0; word < channelWords; word++) {
+            count += Long.bitCount(subscriptions[id * channelWords + word]);
+        }
+        return count;
+    }
+
+    public boolean hasSubscribers(int id) {
+        return nextSubscriber(id, 0) >= 0;
+    }
+
+    public int nextSubscriber(int id, int from) {
+        //lowest channel index >= from that announces the stream, -1 if none
+
+        int base = id * channelWords;
+        for (int word = from / 64; word < channelWords; word++) {
+            long bits = subscriptions[base + word];
+            if (word == from / 64) {
+                bits &= -1L << from;
+            }
+            if (bits != 0) {
+                return word * 64 + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return -1;
+    }
+
+    static int toSeconds(long millis) {
+        //0 stays 0 (never), anything else is at least 1 second after the base
+        return millis == 0 ? 0 : (int) Math.max(1, Math.min(Integer.MAX_VALUE, (millis - EPOCH_BASE) / 1000));
+    }
+
+    static long toMillis(int seconds) {
+        return seconds == 0 ? 0 : EPOCH_BASE + seconds * 1000L;
+    }
+
+    private void grow(int capacity) {
+        caseMasks = Arrays.copyOf(caseMasks, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        offlineChecks = Arrays.copyOf(offlineChecks, capacity);
+        titleHashes = Arrays.copyOf(titleHashes, capacity);
+        gameIds = Arrays.copyOf(gameIds, capacity);
+        lastSeen = Arrays.copyOf(lastSeen, capacity);
+        nextPoll = Arrays.copyOf(nextPoll, capacity);
+        subscriptions = Arrays.copyOf(subscriptions, capacity * channelWords);
+    }
+
+    private void widen(int words) {
+        //more channels than fit in each stream's bitset, spread it out
+
+        long[] widened = new long[flags.length * words];
+        for (int id = 0; id < names.getIdLimit(); id++) {
+            System.arraycopy(subscriptions, id * channelWords, widened, id * words, channelWords);
+        }
+        subscriptions = widened;
+        channelWords = words;
+    }
+}
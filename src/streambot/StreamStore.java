@@ -0,0 +1,207 @@
+package streambot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 
+ * single file holding every channel's preferences and stream list,
+ * replacing global.txt, the per-channel txt files and channels.json
+ * - streams are keyed by their StreamStates id, channels by their channel
+ *   index (the same index the StreamManager subscribes them under), and
+ *   channel lists are stored as stream ids
+ * - each stream keeps a count of the channels referencing it, the global
+ *   watch set is every stream with a count above zero; counts are checked
+ *   against the lists on load, the lists win if they disagree
+ * - encoded straight from the StreamStates under the manager's lock, and
+ *   written outside it; always rewritten atomically as a whole (changes
+ *   in between are kept in the StreamJournal)
+ * - loaded with one sequential read, straight into subscriptions; streams
+ *   get new ids on load, the ones in the file only link the tables
+ * 
+ * layout:
+ * header: magic, version, stream id limit, stream count, channel count,
+ *         index (offset of stream table, offset of channel table)
+ * stream table: id, name, reference count
+ * channel table: channel index, name, flavor, randomize, announce offline,
+ *                digest threshold, stream count, stream ids
+ * strings are an int byte length followed by utf-8 bytes
+ * version 1 stores (no channel index, channels in index order) still load
+ */
+
+public class StreamStore {
+
+    private static final int MAGIC = 0x53424442; //"SBDB"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 * 5 + 8 * 2;
+
+    private Path storePath;
+
+    public StreamStore() {
+        storePath = Paths.get("data" + File.separator + "streambot.db");
+    }
+
+    public boolean exists() {
+        return storePath.toFile().exists();
+    }
+
+    public synchronized ArrayList<StreamChannel> load(StreamStates states) {
+        //read every channel from the store in channel index order, and
+        //subscribe its streams in states; null if it couldn't be read
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(storePath));
+            int version = 0;
+            if (buffer.getInt() != MAGIC || (version = buffer.getInt()) < 1 || version > VERSION) {
+                System.out.println("Unknown store format " + storePath);
+                return null;
+            }
+            buffer.getInt(); //stream id limit, ids are handed out again
+            int streamCount = buffer.getInt();
+            int channelCount = buffer.getInt();
+            long streamsOffset = buffer.getLong();
+            long channelsOffset = buffer.getLong();
+
+            //key = id in the file; value = {id in states, unmatched reference count}
+            buffer.position((int) streamsOffset);
+            HashMap<Integer, int[]> streams = new HashMap<>(streamCount * 2);
+            for (int i=0; i<streamCount; i++) {
+                int fileId = buffer.getInt();
+                int id = states.put(readString(buffer));
+                streams.put(fileId, new int[] {id, buffer.getInt()});
+            }
+
+            buffer.position((int) channelsOffset);
+            StreamChannel[] channels = new StreamChannel[channelCount];
+            for (int i=0; i<channelCount; i++) {
+                int index = version == 1 ? i : buffer.getInt();
+                if (index < 0 || index >= channelCount || channels[index] != null) {
+                    System.out.println("Bad channel index " + index + " in store " + storePath);
+                    return null;
+                }
+                String channel = readString(buffer);
+                int flavor = buffer.getInt();
+                boolean randomize = buffer.get() != 0;
+                boolean announceOffline = buffer.get() != 0;
+                int digestThreshold = buffer.getInt();
+                channels[index] = new StreamChannel(channel, flavor, randomize, announceOffline, digestThreshold);
+
+                int listSize = buffer.getInt();
+                for (int j=0; j<listSize; j++) {
+                    int[] stream = streams.get(buffer.getInt());
+                    if (stream != null && !states.isSubscribed(stream[0], index)) {
+                        states.subscribe(stream[0], index);
+                        stream[1]--;
+                    }
+                }
+            }
+
+            //every count should have been used up by the lists exactly,
+            //and a stream on no list isn't watched
+            int mismatched = 0;
+            for (int[] stream : streams.values()) {
+                if (stream[1] != 0) mismatched++;
+                if (!states.hasSubscribers(stream[0])) {
+                    states.remove(states.getName(stream[0]));
+                }
+            }
+            if (mismatched > 0) {
+                FileLogger.logWarning(mismatched + " stream reference counts in " + storePath
+                        + " don't match the channel lists, using the lists");
+            }
+            return new ArrayList<>(Arrays.asList(channels));
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            System.out.println("Error reading store " + storePath + " " + e);
+            return null;
+        }
+    }
+
+    public static byte[] encode(StreamStates states, List<StreamChannel> channels) {
+        //the whole store from the current lists and prefs, channels in
+        //channel index order; called under the manager's lock
+
+        //each channel's list, gathered in one pass over the streams
+        int[][] lists = new int[channels.size()][];
+        int[] listSizes = new int[channels.size()];
+        for (int i=0; i<lists.length; i++) {
+            lists[i] = new int[16];
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + states.size() * 32);
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            //stream table
+            out.write(new byte[HEADER_SIZE]);
+            long streamsOffset = out.size();
+            for (int id = 0; id < states.getIdLimit(); id++) {
+                if (!states.isUsed(id)) continue;
+                out.writeInt(id);
+                writeString(out, states.getName(id));
+                out.writeInt(states.getSubscriberCount(id));
+                for (int c = states.nextSubscriber(id, 0); c >= 0 && c < lists.length; c = states.nextSubscriber(id, c + 1)) {
+                    if (listSizes[c] == lists[c].length) {
+                        lists[c] = Arrays.copyOf(lists[c], listSizes[c] * 2);
+                    }
+                    lists[c][listSizes[c]++] = id;
+                }
+            }
+
+            //channel table
+            long channelsOffset = out.size();
+            for (int i=0; i<channels.size(); i++) {
+                StreamChannel channel = channels.get(i);
+                out.writeInt(i);
+                writeString(out, channel.getChannel());
+                out.writeInt(channel.getFlavor());
+                out.writeByte(channel.isFlavorRandomized() ? 1 : 0);
+                out.writeByte(channel.isAnnouncingOffline() ? 1 : 0);
+                out.writeInt(channel.getDigestThreshold());
+                out.writeInt(listSizes[i]);
+                for (int j=0; j<listSizes[i]; j++) {
+                    out.writeInt(lists[i][j]);
+                }
+            }
+            out.flush();
+
+            //header, now that the index is known
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(states.getIdLimit())
+                    .putInt(states.size()).putInt(channels.size())
+                    .putLong(streamsOffset).putLong(channelsOffset);
+            return buffer.array();
+        } catch (IOException e) {
+            //writing to memory, can't happen
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public boolean write(byte[] encoded) {
+        System.out.println("Saving store, " + encoded.length + " bytes");
+        return StreamFileHandler.writeAtomically(storePath, encoded);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,102 @@
+package streambot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * 
+ * reads a kraken /streams response directly from the response body
+ * only channel name, display name, status, game and viewers are kept,
+ * every other field is skipped without being decoded, keys included
+ * - streams are added to the caller's list, one page at a time
+ * - returns _total, so the caller knows if there's another page
+ */
+
+public class StreamsParser {
+
+    private static final String[] PAGE_FIELDS = {"_total", "streams"};
+    private static final int TOTAL = 0;
+    private static final int STREAMS = 1;
+
+    private static final String[] STREAM_FIELDS = {"viewers", "channel"};
+    private static final int VIEWERS = 0;
+    private static final int CHANNEL = 1;
+
+    private static final String[] CHANNEL_FIELDS = {"name", "display_name", "status", "game"};
+    private static final int NAME = 0;
+    private static final int DISPLAY_NAME = 1;
+    private static final int STATUS = 2;
+    private static final int GAME = 3;
+
+    public static int parse(InputStream in, ArrayList<LiveStream> streams) throws IOException {
+
+        int total = -1;
+        JsonPullParser parser = new JsonPullParser(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            int field = parser.nextName(PAGE_FIELDS);
+            if (field == TOTAL) {
+                total = parser.nextInt();
+            } else if (field == STREAMS) {
+                parser.beginArray();
+                while (parser.hasNext()) {
+                    streams.add(parseStream(parser));
+                }
+                parser.endArray();
+            } else {
+                parser.skipValue();
+            }
+        }
+        parser.endObject();
+
+        return total;
+    }
+
+    private static LiveStream parseStream(JsonPullParser parser) throws IOException {
+
+        String name = "";
+        String displayName = "";
+        String status = "";
+        String game = "";
+        int viewers = 0;
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            int field = parser.nextName(STREAM_FIELDS);
+            if (field == VIEWERS) {
+                viewers = parser.nextInt();
+            } else if (field == CHANNEL) {
+                parser.beginObject();
+                while (parser.hasNext()) {
+                    switch (parser.nextName(CHANNEL_FIELDS)) {
+                    case NAME:
+                        name = parser.nextString();
+                        break;
+                    case DISPLAY_NAME:
+                        displayName = parser.nextStringOrEmpty();
+                        break;
+                    case STATUS:
+                        status = parser.nextStringOrEmpty();
+                        break;
+                    case GAME:
+                        game = parser.nextStringOrEmpty();
+                        break;
+                    default:
+                        parser.skipValue();
+                    }
+                }
+                parser.endObject();
+            } else {
+                parser.skipValue();
+            }
+        }
+        parser.endObject();
+
+        if (displayName.isEmpty()) displayName = name;
+        return new LiveStream(name, displayName, status, game, viewers);
+    }
+}
@@ -1,115 +1,139 @@
 package streambot;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.util.HashSet;
 
 public class TwitchApiUtils {
 
-    private static final String TWITCH_BASE_URL = "https://api.twitch.tv/kraken/streams?channel=";
+    private static StreamApi backend;
 
-    public static String getStreamStatus(String stream) {
-        //check individual channel's online status
+    public static synchronized StreamApi getBackend() throws IOException {
+        //kraken or helix, from the api settings in BotConfig
 
-        String streamStatus = "";
-        JSONObject json = getJsonObject(TWITCH_BASE_URL + stream);
-        if (json != null) {
-            JSONArray streams = json.getJSONArray("streams");
-            if (streams.length() > 0) {
-                JSONObject theStream = streams.getJSONObject(0);
-                JSONObject channelInfo = theStream.getJSONObject("channel");
-                streamStatus = stream + " is online! Title: " + channelInfo.getString("status")
-                        + " Game: " + theStream.getString("game")
-                        + " Viewers: " + String.valueOf(theStream.getInt("viewers"));
+        if (backend == null) {
+            BotConfig config = BotConfig.getInstance();
+            if (config.getApiBackend().equals("helix")) {
+                backend = new HelixApi(config.getApiBaseUrl(), config.getApiBatchSize());
             } else {
-                streamStatus = stream + " is not online.";
+                backend = new KrakenApi(config.getApiBaseUrl(), config.getApiBatchSize());
             }
-        } else {
-            streamStatus = "An error occured checking stream.";
         }
-
-        return streamStatus;
+        return backend;
     }
 
-    public static String getLiveStreams(ArrayList<String> streams) {
-        //produce list of streams that are live
-
-        StringBuilder messageBuilder = new StringBuilder();
-        ArrayList<String> chunkedStreams = chunkifyStreams(streams);
-        for (String streamsUrl : chunkedStreams) {
-            JSONObject json = getJsonObject(TWITCH_BASE_URL + streamsUrl);
-            JSONArray jsonStreamsArray = json.getJSONArray("streams");
-            int total = json.getInt("_total");
-            for (int i=0;i<total;i++) {
-                JSONObject jsonStream = jsonStreamsArray.getJSONObject(i);
-                JSONObject channel = jsonStream.getJSONObject("channel");
-                messageBuilder.append(channel.get("display_name") + ", ");
+    public static String getStreamStatus(String stream) {
+        //check individual channel's online status
+
+        if (NameCache.getInstance().isKnownInvalid(stream)) {
+            return stream + " is not a valid twitch name";
+        }
+        ArrayList<String> names = new ArrayList<>();
+        names.add(stream);
+        try {
+            ArrayList<LiveStream> streams = getBackend().getLiveStreams(names, RateBudget.Use.COMMAND);
+            if (streams.isEmpty()) {
+                return stream + " is not online.";
             }
+            LiveStream live = streams.get(0);
+            return stream + " is online! Title: " + live.getStatus()
+                    + " Game: " + live.getGame()
+                    + " Viewers: " + String.valueOf(live.getViewers());
+        } catch (IOException e) {
+            System.out.println("Error checking stream " + e.getMessage());
+            return "An error occured checking stream.";
         }
-        return messageBuilder.toString();
     }
 
-    public static JSONObject getJsonObject(String url) {
-        //build and return JSONObject from url
-        
-        JSONObject json = null;
+    public static HashSet<String> getValidNames(ArrayList<String> names) {
+        //returns the names that exist, answered from the NameCache where it
+        //can, the rest are looked up a batch of names per request
+        //returns null if any request failed, since then we can't tell
+
+        NameCache cache = NameCache.getInstance();
+        HashSet<String> valid = new HashSet<>();
+        ArrayList<String> unknown = new ArrayList<>();
+        for (String name : names) {
+            if (cache.getFresh(name) != null) {
+                valid.add(name);
+            } else if (!cache.isKnownInvalid(name)) {
+                unknown.add(name);
+            }
+        }
+        if (unknown.isEmpty()) {
+            return valid;
+        }
+
         try {
-            //grab client id
-            BotConfig config = BotConfig.getInstance();
-            String clientID = config.getClientID();
-            
-            System.out.println("checking url - " + url);
-            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
-            connection.setRequestMethod("GET");
-            connection.setRequestProperty("Client-ID", clientID);
-            InputStream inputStream = connection.getInputStream();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
-            StringBuilder builder = new StringBuilder();
-            int cp;
-            while ((cp = reader.read()) != -1) {
-                builder.append((char) cp);
+            StreamApi api = getBackend();
+            for (ArrayList<String> batch : batch(unknown, api.getBatchSize())) {
+                valid.addAll(resolve(api, batch, RateBudget.Use.COMMAND));
             }
-            String jsonText = builder.toString();
-            json = new JSONObject(jsonText);
-            inputStream.close();
-            return json;
         } catch (IOException e) {
-            System.out.println("IOError " + e);
-        } catch (JSONException e) {
-            System.out.println("JSON error " + e);
+            System.out.println("Error checking names " + e.getMessage());
+            return null;
+        } finally {
+            cache.save();
         }
-        return json;
+        return valid;
     }
 
-    public static ArrayList<String> chunkifyStreams(ArrayList<String> allStreams) {
-        //take list of all channels and make them url-ready strings (comma-separated)
-        //if > 100 names, split into chunks of size 100 (twitch api limitations)
-        //returns arraylist of {"name0,name1,....,name99", "name100,name101,...,name199",...}
+    public static void resolveUncached(ArrayList<String> names) {
+        //look up one batch of watched names the NameCache has no id for,
+        //called every poll cycle so streams end up polled by id
+        //backends that only poll by name have no use for the ids
+
+        NameCache cache = NameCache.getInstance();
+        ArrayList<String> uncached = new ArrayList<>();
+        try {
+            StreamApi api = getBackend();
+            if (!api.pollsById()) return;
+            for (String name : names) {
+                if (cache.getId(name) == null && !cache.isKnownInvalid(name)) {
+                    uncached.add(name);
+                    if (uncached.size() == api.getBatchSize()) break;
+                }
+            }
+            if (uncached.isEmpty()) return;
+            resolve(api, uncached, RateBudget.Use.POLL);
+        } catch (IOException e) {
+            System.out.println("Error resolving stream ids " + e.getMessage());
+        } finally {
+            cache.save();
+        }
+    }
 
-        ArrayList<String> chunkedStreams = new ArrayList<String>();
-        int i = 1;
-        StringBuilder chunkBuilder = new StringBuilder();
-        for (String stream : allStreams) {
+    private static HashSet<String> resolve(StreamApi api, ArrayList<String> batch, RateBudget.Use use) throws IOException {
+        //cache every account found, and remember the names that weren't
 
-            //start new chunk at 100
-            if (i % 100 == 0) {
-                chunkedStreams.add(chunkBuilder.toString());
-                chunkBuilder = new StringBuilder();
+        NameCache cache = NameCache.getInstance();
+        HashSet<String> found = new HashSet<>();
+        for (TwitchUser user : api.getUsers(batch, use)) {
+            cache.putUser(user);
+            found.add(user.getLogin());
+        }
+        for (String name : batch) {
+            if (!found.contains(name)) {
+                cache.putInvalid(name);
             }
-            chunkBuilder.append(stream + ",");
-            i++;
         }
-        chunkedStreams.add(chunkBuilder.toString());
-        return chunkedStreams;
+        return found;
+    }
+
+    public static boolean isValidName(String name) {
+        //twitch names are 1-25 letters, digits or underscores
+        return name.matches("[a-z0-9_]{1,25}");
+    }
+
+    public static ArrayList<ArrayList<String>> batch(ArrayList<String> allStreams, int size) {
+        //split the list into batches of at most size names,
+        //the most the api accepts in a single request
+
+        ArrayList<ArrayList<String>> batches = new ArrayList<>();
+        for (int i=0; i<allStreams.size(); i+=size) {
+            batches.add(new ArrayList<>(allStreams.subList(i, Math.min(allStreams.size(), i + size))));
+        }
+        return batches;
     }
 
 }
@@ -0,0 +1,32 @@
+package streambot;
+
+/**
+ *
+ * a twitch account as returned by a users lookup
+ * the id never changes, the login and display name can
+ */
+
+public class TwitchUser {
+
+    private String id = "";
+    private String login = "";
+    private String displayName = "";
+
+    public TwitchUser(String id, String login, String displayName) {
+        this.id = id;
+        this.login = login;
+        this.displayName = displayName;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+}
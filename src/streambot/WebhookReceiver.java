@@ -0,0 +1,231 @@
+package streambot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ *
+ * embedded http endpoint for pushed stream notifications (EventSub style)
+ * - every message is signed: hex HMAC-SHA256 of id + timestamp + body,
+ *   keyed with the shared secret, in the Twitch-Eventsub-Message-Signature header
+ * - old timestamps and repeated message ids are dropped, so a captured
+ *   message can't be replayed
+ * - answers the callback verification challenge
+ * - stream.online, stream.offline and channel.update notifications are
+ *   passed to the StreamManager, which announces them the same way as a poll
+ */
+
+public class WebhookReceiver implements HttpHandler {
+
+    private static final String PATH = "/eventsub";
+    private static final int MAX_BODY = 64 * 1024;
+
+    //messages older than this are refused
+    private static final Duration MAX_AGE = Duration.ofMinutes(10);
+
+    //recent message ids, notifications are retried if we're slow to answer
+    private static final int SEEN_IDS = 1000;
+
+    private HttpServer server;
+    private StreamManager streamManager;
+    private SecretKeySpec key;
+
+    private LinkedHashMap<String, Boolean> seen = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > SEEN_IDS;
+        }
+    };
+
+    public WebhookReceiver(StreamManager streamManager, int port, String secret) throws IOException {
+        this.streamManager = streamManager;
+        key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(PATH, this);
+        server.setExecutor(Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "webhook-receiver");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    public void start() {
+        server.start();
+        FileLogger.logInfo("Listening for stream notifications on port " + server.getAddress().getPort() + PATH);
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                respond(exchange, 405, null);
+                return;
+            }
+            byte[] body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                respond(exchange, 413, null);
+                return;
+            }
+
+            String id = exchange.getRequestHeaders().getFirst("Twitch-Eventsub-Message-Id");
+            String timestamp = exchange.getRequestHeaders().getFirst("Twitch-Eventsub-Message-Timestamp");
+            String signature = exchange.getRequestHeaders().getFirst("Twitch-Eventsub-Message-Signature");
+            String type = exchange.getRequestHeaders().getFirst("Twitch-Eventsub-Message-Type");
+            if (id == null || timestamp == null || signature == null || type == null
+                    || !verify(id, timestamp, body, signature)) {
+                System.out.println("Rejected unsigned or badly signed webhook message");
+                respond(exchange, 403, null);
+                return;
+            }
+            if (!isRecent(timestamp) || !firstSeen(id)) {
+                //already handled or too old, but acknowledge it so it isn't resent
+                respond(exchange, 204, null);
+                return;
+            }
+
+            JSONObject json = new JSONObject(new String(body, StandardCharsets.UTF_8));
+            switch (type) {
+                case "webhook_callback_verification":
+                    respond(exchange, 200, json.getString("challenge"));
+                    FileLogger.logInfo("Verified webhook subscription " + describe(json));
+                    break;
+                case "notification":
+                    //answer first, the sender only waits a few seconds
+                    respond(exchange, 204, null);
+                    dispatch(json);
+                    break;
+                case "revocation":
+                    respond(exchange, 204, null);
+                    FileLogger.logWarning("Webhook subscription revoked " + describe(json));
+                    break;
+                default:
+                    respond(exchange, 400, null);
+            }
+        } catch (JSONException e) {
+            System.out.println("Bad webhook message " + e.getMessage());
+            if (exchange.getResponseCode() == -1) {
+                respond(exchange, 400, null);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void dispatch(JSONObject json) {
+        String subscription = json.getJSONObject("subscription").getString("type");
+        JSONObject event = json.getJSONObject("event");
+        String stream = event.getString("broadcaster_user_login").toLowerCase();
+        String displayName = event.optString("broadcaster_user_name", stream);
+
+        switch (subscription) {
+            case "stream.online":
+                //real stream.online events have no title or game, a stand-in sender may include them
+                if (event.has("title") && event.has("category_name")) {
+                    streamManager.pushOnline(stream, new LiveStream(stream, displayName,
+                            event.getString("title"), event.getString("category_name"), 0));
+                } else {
+                    streamManager.pushOnline(stream, null);
+                }
+                break;
+            case "stream.offline":
+                streamManager.pushOffline(stream);
+                break;
+            case "channel.update":
+                streamManager.pushUpdate(stream, new LiveStream(stream, displayName,
+                        event.optString("title", ""), event.optString("category_name", ""), 0));
+                break;
+            default:
+                System.out.println("Ignoring webhook notification " + subscription);
+        }
+    }
+
+    private boolean verify(String id, String timestamp, byte[] body, String signature) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            mac.update(id.getBytes(StandardCharsets.UTF_8));
+            mac.update(timestamp.getBytes(StandardCharsets.UTF_8));
+            byte[] expected = ("sha256=" + toHex(mac.doFinal(body))).getBytes(StandardCharsets.UTF_8);
+
+            //constant time, so the signature can't be guessed byte by byte
+            return MessageDigest.isEqual(expected, signature.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            System.out.println("Error checking webhook signature " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean isRecent(String timestamp) {
+        try {
+            Duration age = Duration.between(Instant.parse(timestamp), Instant.now());
+            return age.compareTo(MAX_AGE) < 0 && age.compareTo(MAX_AGE.negated()) > 0;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private synchronized boolean firstSeen(String id) {
+        return seen.put(id, Boolean.TRUE) == null;
+    }
+
+    private static String describe(JSONObject json) {
+        JSONObject subscription = json.optJSONObject("subscription");
+        return subscription == null ? "" : subscription.optString("type", "") + " " + subscription.optString("id", "");
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        //null if it's bigger than any real notification
+
+        byte[] body = in.readNBytes(MAX_BODY + 1);
+        return body.length > MAX_BODY ? null : body;
+    }
+
+    private static void respond(HttpExchange exchange, int code, String text) throws IOException {
+        if (text == null) {
+            exchange.sendResponseHeaders(code, -1);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}